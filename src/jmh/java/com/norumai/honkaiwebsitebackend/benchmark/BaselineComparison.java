@@ -0,0 +1,107 @@
+package com.norumai.honkaiwebsitebackend.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Compares a JMH JSON result against the committed baseline, benchmark by benchmark (with parameters and mode).
+// Exits with 1 when a score or the allocation per operation got worse than the threshold, so it can gate a build.
+// A score only counts as worse when the 99.9% confidence intervals (score +- scoreError) of both runs do not overlap,
+// a change within the run-to-run noise is listed but does not fail the build.
+// Arguments: baseline file, result file and optionally the threshold in percent (default 10).
+public class BaselineComparison {
+
+    private static final String ALLOCATION = "gc.alloc.rate.norm";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BaselineComparison <baseline.json> <result.json> [threshold-percent]");
+            System.exit(2);
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 10;
+        ObjectMapper objectMapper = new ObjectMapper();
+        Map<String, JsonNode> baseline = index(objectMapper.readTree(new File(args[0])));
+        Map<String, JsonNode> result = index(objectMapper.readTree(new File(args[1])));
+
+        int regressions = 0;
+        System.out.printf("%-90s %22s %22s %9s %12s%n", "Benchmark", "Baseline", "Current", "Change", "Alloc B/op");
+        for (Map.Entry<String, JsonNode> entry : result.entrySet()) {
+            JsonNode current = entry.getValue();
+            JsonNode previous = baseline.get(entry.getKey());
+            double score = current.path("primaryMetric").path("score").asDouble();
+            double error = scoreError(current);
+            String unit = current.path("primaryMetric").path("scoreUnit").asText();
+            String allocation = allocation(current);
+            if (previous == null) {
+                System.out.printf("%-90s %22s %22s %9s %12s  new%n", entry.getKey(), "-", formatScore(score, error), "-",
+                        allocation);
+                continue;
+            }
+
+            double previousScore = previous.path("primaryMetric").path("score").asDouble();
+            double previousError = scoreError(previous);
+            double change = previousScore == 0 ? 0 : (score - previousScore) / previousScore * 100;
+            // Throughput is better when higher, every time based mode when lower.
+            boolean throughput = "thrpt".equals(current.path("mode").asText());
+            double worse = throughput ? -change : change;
+            boolean outsideError = throughput
+                    ? score + error < previousScore - previousError
+                    : score - error > previousScore + previousError;
+            boolean scoreRegressed = worse > threshold && outsideError;
+            boolean regressed = scoreRegressed || allocationRegressed(previous, current, threshold);
+            if (regressed) {
+                regressions++;
+            }
+            String verdict = regressed ? "  REGRESSION" : worse > threshold ? "  within error" : "";
+            System.out.printf("%-90s %22s %22s %+8.1f%% %12s  %s%s%n", entry.getKey(),
+                    formatScore(previousScore, previousError), formatScore(score, error), change, allocation, unit, verdict);
+        }
+
+        System.out.printf("%d of %d benchmarks regressed by more than %.0f%%.%n", regressions, result.size(), threshold);
+        System.exit(regressions > 0 ? 1 : 0);
+    }
+
+    // "benchmark [param=value, ...] mode", unique within one run.
+    private static Map<String, JsonNode> index(JsonNode results) {
+        Map<String, JsonNode> indexed = new LinkedHashMap<>();
+        for (JsonNode result : results) {
+            String name = result.path("benchmark").asText().replace("com.norumai.honkaiwebsitebackend.benchmark.", "");
+            if (result.has("params")) {
+                name += " " + result.get("params");
+            }
+            indexed.put(name + " " + result.path("mode").asText(), result);
+        }
+        return indexed;
+    }
+
+    // JMH writes NaN when it could not compute an interval (a single iteration), such a score is taken as exact.
+    private static double scoreError(JsonNode result) {
+        double error = result.path("primaryMetric").path("scoreError").asDouble();
+        return Double.isNaN(error) ? 0 : error;
+    }
+
+    private static String formatScore(double score, double error) {
+        return String.format("%.3f +- %.3f", score, error);
+    }
+
+    private static String allocation(JsonNode result) {
+        JsonNode metric = result.path("secondaryMetrics").path(ALLOCATION);
+        return metric.isMissingNode() ? "-" : String.format("%.0f", metric.path("score").asDouble());
+    }
+
+    // Bytes per operation are stable between runs, a few bytes of noise are ignored.
+    private static boolean allocationRegressed(JsonNode previous, JsonNode current, double threshold) {
+        JsonNode before = previous.path("secondaryMetrics").path(ALLOCATION);
+        JsonNode after = current.path("secondaryMetrics").path(ALLOCATION);
+        if (before.isMissingNode() || after.isMissingNode()) {
+            return false;
+        }
+        double bytesBefore = before.path("score").asDouble();
+        double bytesAfter = after.path("score").asDouble();
+        return bytesAfter - bytesBefore > 16 && bytesAfter > bytesBefore * (1 + threshold / 100);
+    }
+}
@@ -0,0 +1,61 @@
+package com.norumai.honkaiwebsitebackend.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Turns a JMH JSON result into the committed baseline, keeping only what BaselineComparison reads: the score,
+// its error and the allocation per operation. Raw samples and histograms are dropped and every benchmark is written
+// on a line of its own, so a re-recorded baseline diffs in a few lines.
+// Arguments: result file and baseline file.
+public class BaselineRecorder {
+
+    private static final String ALLOCATION = "gc.alloc.rate.norm";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: BaselineRecorder <result.json> <baseline.json>");
+            System.exit(2);
+        }
+        ObjectMapper objectMapper = new ObjectMapper();
+        JsonNode results = objectMapper.readTree(new File(args[0]));
+
+        int recorded = 0;
+        try (Writer writer = Files.newBufferedWriter(Path.of(args[1]))) {
+            writer.write("[\n");
+            for (JsonNode result : results) {
+                ObjectNode row = objectMapper.createObjectNode();
+                row.set("benchmark", result.path("benchmark"));
+                row.set("mode", result.path("mode"));
+                if (result.has("params")) {
+                    row.set("params", result.get("params"));
+                }
+                row.set("primaryMetric", metric(objectMapper, result.path("primaryMetric")));
+                JsonNode allocation = result.path("secondaryMetrics").path(ALLOCATION);
+                if (!allocation.isMissingNode()) {
+                    row.putObject("secondaryMetrics").set(ALLOCATION, metric(objectMapper, allocation));
+                }
+
+                writer.write(recorded > 0 ? ",\n" : "");
+                writer.write(objectMapper.writeValueAsString(row));
+                recorded++;
+            }
+            writer.write("\n]\n");
+        }
+        System.out.printf("Recorded %d benchmarks in %s.%n", recorded, args[1]);
+    }
+
+    private static ObjectNode metric(ObjectMapper objectMapper, JsonNode metric) {
+        ObjectNode trimmed = objectMapper.createObjectNode();
+        trimmed.set("score", metric.path("score"));
+        trimmed.set("scoreError", metric.path("scoreError"));
+        trimmed.set("scoreUnit", metric.path("scoreUnit"));
+        return trimmed;
+    }
+}
@@ -0,0 +1,77 @@
+package com.norumai.honkaiwebsitebackend.benchmark;
+
+import com.norumai.honkaiwebsitebackend.util.CookieHeaders;
+import jakarta.servlet.http.Cookie;
+import org.apache.tomcat.util.http.MimeHeaders;
+import org.apache.tomcat.util.http.Rfc6265CookieProcessor;
+import org.apache.tomcat.util.http.ServerCookie;
+import org.apache.tomcat.util.http.ServerCookies;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+// Finding the jwt cookie in the raw header bytes of a browser request.
+// "servletCookies" is what Tomcat does behind request.getCookies(): parse every cookie and build a Cookie for each.
+// "headerScan" is what JwtFilter does now: the header as a String, as getHeader returns it, and one scan for jwt.
+// Both start from the bytes of a fresh request, so the header decoding is counted on both sides.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(3)
+public class CookieExtractionBenchmark {
+
+    private static final String COOKIE_HEADER = "_ga=GA1.1.1234567890.1700000000; theme=dark; "
+            + "jwt=eyJhbGciOiJFZERTQSIsImtpZCI6ImtleS0xIn0"
+            + ".eyJzdWIiOiJ0ZXN0QGV4YW1wbGUuY29tIiwidWlkIjoxLCJyb2xlIjoiVVNFUiIsImlhdCI6MTcwMDAwMDAwMCwiZXhwIjoxNzAwMDAwOTAwfQ"
+            + ".c2lnbmF0dXJlc2lnbmF0dXJlc2lnbmF0dXJlc2lnbmF0dXJlc2lnbmF0dXJlc2lnbmF0dXJl; "
+            + "refresh=MTIzNDU2Nzg5MA.c2VjcmV0c2VjcmV0c2VjcmV0c2VjcmV0";
+
+    private final byte[] headerBytes = COOKIE_HEADER.getBytes(StandardCharsets.ISO_8859_1);
+    private final Rfc6265CookieProcessor cookieProcessor = new Rfc6265CookieProcessor();
+    private final ServerCookies serverCookies = new ServerCookies(4);
+    private MimeHeaders headers;
+
+    @Setup
+    public void setup() {
+        headers = new MimeHeaders();
+        headers.addValue("Cookie").setBytes(headerBytes, 0, headerBytes.length);
+    }
+
+    @Benchmark
+    public String servletCookies() {
+        // Tomcat recycles its parsed cookies between requests, the Cookie objects are new every time.
+        serverCookies.recycle();
+        cookieProcessor.parseCookieHeader(headers, serverCookies);
+        Cookie[] cookies = new Cookie[serverCookies.getCookieCount()];
+        for (int i = 0; i < cookies.length; i++) {
+            ServerCookie serverCookie = serverCookies.getCookie(i);
+            cookies[i] = new Cookie(serverCookie.getName().toString(), null);
+            cookies[i].setValue(serverCookie.getValue().toString());
+        }
+
+        for (Cookie cookie : cookies) {
+            if (cookie.getName().equals("jwt")) {
+                return cookie.getValue();
+            }
+        }
+        return null;
+    }
+
+    @Benchmark
+    public String headerScan() {
+        String header = new String(headerBytes, StandardCharsets.ISO_8859_1);
+        return CookieHeaders.findValue(header, "jwt");
+    }
+}
@@ -0,0 +1,131 @@
+package com.norumai.honkaiwebsitebackend.benchmark;
+
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.lettuce.core.cluster.api.sync.RedisClusterCommands;
+import io.lettuce.core.pubsub.RedisPubSubListener;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
+import io.lettuce.core.pubsub.api.sync.RedisPubSubCommands;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+// Stand-in for Redis in benchmarks, a map behind the Lettuce interfaces the request path uses.
+// Keeps network and server time out of the numbers, so only the application's own work is measured.
+// Expirations are ignored and unsupported commands fail loudly, so a new command on the hot path is noticed.
+public class InMemoryRedis {
+
+    private final Map<String, Object> values = new ConcurrentHashMap<>();
+    private final List<RedisPubSubListener<String, Object>> listeners = new CopyOnWriteArrayList<>();
+
+    private final RedisClusterCommands<String, Object> sync = proxy(RedisClusterCommands.class, this::execute);
+    private final RedisClusterAsyncCommands<String, Object> async = proxy(RedisClusterAsyncCommands.class,
+            (method, args) -> new CompletedRedisFuture<>(execute(method, args)));
+    private final RedisPubSubCommands<String, Object> pubSubCommands = proxy(RedisPubSubCommands.class, this::subscribe);
+    private final StatefulRedisPubSubConnection<String, Object> pubSubConnection =
+            proxy(StatefulRedisPubSubConnection.class, this::connection);
+
+    public RedisClusterCommands<String, Object> sync() {
+        return sync;
+    }
+
+    public RedisClusterAsyncCommands<String, Object> async() {
+        return async;
+    }
+
+    public StatefulRedisPubSubConnection<String, Object> pubSubConnection() {
+        return pubSubConnection;
+    }
+
+    private Object execute(Method method, Object[] args) {
+        return switch (method.getName()) {
+            case "get" -> values.get((String) args[0]);
+            case "set", "setex" -> {
+                values.put((String) args[0], args[args.length - 1]);
+                yield "OK";
+            }
+            case "exists" -> count((Object[]) args[0], false);
+            case "del" -> count((Object[]) args[0], true);
+            case "publish" -> {
+                listeners.forEach(listener -> listener.message((String) args[0], args[1]));
+                yield (long) listeners.size();
+            }
+            default -> throw new UnsupportedOperationException("Not supported by InMemoryRedis: " + method.getName());
+        };
+    }
+
+    private long count(Object[] keys, boolean remove) {
+        long count = 0;
+        for (Object key : keys) {
+            if (remove ? values.remove(key) != null : values.containsKey(key)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Subscriptions are confirmed right away, which is what lets the near-caches start answering.
+    private Object subscribe(Method method, Object[] args) {
+        if (!method.getName().equals("subscribe")) {
+            throw new UnsupportedOperationException("Not supported by InMemoryRedis: " + method.getName());
+        }
+        for (Object channel : (Object[]) args[0]) {
+            listeners.forEach(listener -> listener.subscribed((String) channel, 1));
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object connection(Method method, Object[] args) {
+        return switch (method.getName()) {
+            case "addListener" -> {
+                if (args[0] instanceof RedisPubSubListener<?, ?> listener) {
+                    listeners.add((RedisPubSubListener<String, Object>) listener);
+                }
+                yield null;
+            }
+            case "sync" -> pubSubCommands;
+            case "isOpen" -> true;
+            default -> throw new UnsupportedOperationException("Not supported by InMemoryRedis: " + method.getName());
+        };
+    }
+
+    private interface Handler {
+        Object invoke(Method method, Object[] args);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<?> type, Handler handler) {
+        return (T) Proxy.newProxyInstance(InMemoryRedis.class.getClassLoader(), new Class<?>[] { type },
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "InMemoryRedis " + type.getSimpleName();
+                    default -> handler.invoke(method, args);
+                });
+    }
+
+    private static final class CompletedRedisFuture<T> extends CompletableFuture<T> implements RedisFuture<T> {
+
+        @SuppressWarnings("unchecked")
+        private CompletedRedisFuture(Object value) {
+            complete((T) value);
+        }
+
+        @Override
+        public String getError() {
+            return null;
+        }
+
+        @Override
+        public boolean await(long timeout, TimeUnit unit) {
+            return true;
+        }
+    }
+}
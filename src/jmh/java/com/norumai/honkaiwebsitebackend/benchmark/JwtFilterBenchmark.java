@@ -0,0 +1,202 @@
+package com.norumai.honkaiwebsitebackend.benchmark;
+
+import com.norumai.honkaiwebsitebackend.model.User;
+import com.norumai.honkaiwebsitebackend.repository.UserRepository;
+import com.norumai.honkaiwebsitebackend.service.BlacklistTokenService;
+import com.norumai.honkaiwebsitebackend.service.CustomUserDetailsService;
+import com.norumai.honkaiwebsitebackend.service.JWTService;
+import com.norumai.honkaiwebsitebackend.service.SessionService;
+import com.norumai.honkaiwebsitebackend.util.BlacklistBloomFilter;
+import com.norumai.honkaiwebsitebackend.util.BlacklistNearCache;
+import com.norumai.honkaiwebsitebackend.util.FileJwtKeyManager;
+import com.norumai.honkaiwebsitebackend.util.JwtFilter;
+import com.norumai.honkaiwebsitebackend.util.JwtFilterMetrics;
+import com.norumai.honkaiwebsitebackend.util.RecentRevocations;
+import com.norumai.honkaiwebsitebackend.util.ReplicaReads;
+import com.norumai.honkaiwebsitebackend.util.RevocationWatermarks;
+import com.norumai.honkaiwebsitebackend.util.UserDetailsCache;
+import com.norumai.honkaiwebsitebackend.util.VerifiedTokenCache;
+import com.zaxxer.hikari.HikariDataSource;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.http.Cookie;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.data.jpa.repository.support.JpaRepositoryFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.orm.hibernate5.SpringBeanContainer;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// One authenticated request through JwtFilter, with every collaborator wired as in the application:
+// signature check, blacklist and watermark lookups, user details and the security context.
+// Redis is the in-memory stand-in and MySQL is H2, so the numbers are the application's own CPU and allocation cost.
+// "claims" builds the user from the signed token, "database" loads it through the repository on every request.
+// Login with a leftover token and a CORS preflight are public requests, the filter should cost next to nothing there.
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(3)
+public class JwtFilterBenchmark {
+
+    @Param({"claims", "database"})
+    private String userDetails;
+
+    private HikariDataSource dataSource;
+    private EntityManagerFactory entityManagerFactory;
+    private JwtFilter jwtFilter;
+    private String token;
+
+    // Each thread reuses its own request, as a servlet container recycles them.
+    @State(Scope.Thread)
+    public static class Exchange {
+        private final MockHttpServletRequest request = new MockHttpServletRequest("GET", "/hello");
+        private final MockHttpServletRequest loginRequest = new MockHttpServletRequest("POST", "/auth/login");
+        private final MockHttpServletRequest preflightRequest = new MockHttpServletRequest("OPTIONS", "/hello");
+        private final MockHttpServletResponse response = new MockHttpServletResponse();
+        private final FilterChain filterChain = (request, response) -> {
+        };
+
+        @Setup
+        public void setup(JwtFilterBenchmark benchmark) {
+            request.setCookies(new Cookie("jwt", benchmark.token));
+            loginRequest.setCookies(new Cookie("jwt", benchmark.token));
+            preflightRequest.addHeader(HttpHeaders.ORIGIN, "https://localhost:5173");
+            preflightRequest.addHeader(HttpHeaders.ACCESS_CONTROL_REQUEST_METHOD, "GET");
+        }
+    }
+
+    @Setup
+    public void setup() throws Exception {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        InMemoryRedis redis = new InMemoryRedis();
+        boolean signedClaims = "claims".equals(userDetails);
+
+        UserDetailsCache userDetailsCache = new UserDetailsCache(redis.sync(), redis.pubSubConnection(), meterRegistry,
+                signedClaims, 10000, 60, 600);
+        userDetailsCache.init();
+        VerifiedTokenCache verifiedTokenCache = new VerifiedTokenCache(redis.pubSubConnection(), meterRegistry, true, 100000);
+        verifiedTokenCache.init();
+        BlacklistNearCache nearCache = new BlacklistNearCache(redis.pubSubConnection(), meterRegistry, true, 100000, 900);
+        nearCache.init();
+        BlacklistBloomFilter bloomFilter = new BlacklistBloomFilter(redis.pubSubConnection(), redis.sync(), null,
+                meterRegistry, false, 100000, 0.001, 900);
+        RecentRevocations recentRevocations = new RecentRevocations(redis.pubSubConnection(), meterRegistry, 100000, 900);
+        recentRevocations.init();
+        RevocationWatermarks revocationWatermarks = new RevocationWatermarks(redis.pubSubConnection(), meterRegistry,
+                100000, 1209600);
+        revocationWatermarks.init();
+        BlacklistTokenService blacklistTokenService = new BlacklistTokenService(redis.sync(), redis.async(),
+                redis.sync(), redis.async(), nearCache, bloomFilter, verifiedTokenCache, recentRevocations,
+                revocationWatermarks, CircuitBreakerRegistry.ofDefaults(), meterRegistry, "fail-open", 500, 900, 1209600);
+        SessionService sessionService = new SessionService(redis.async(), blacklistTokenService, 900);
+
+        UserRepository userRepository = userRepository(userDetailsCache, sessionService);
+        JpaTransactionManager transactionManager = new JpaTransactionManager(entityManagerFactory);
+        User user = new TransactionTemplate(transactionManager).execute(status -> {
+            User newUser = new User();
+            newUser.setUsername("testuser");
+            newUser.setEmail("test@example.com");
+            newUser.setPassword("{bcrypt}unused");
+            return userRepository.save(newUser);
+        });
+
+        FileJwtKeyManager keyManager = new FileJwtKeyManager(
+                Files.createTempDirectory("jwt-keys").toString(), "EdDSA", 30, 300, 60, 900);
+        JWTService jwtService = new JWTService(keyManager, verifiedTokenCache, signedClaims, 1, 900);
+        token = jwtService.generateToken(user);
+        // No replicas, database lookups run in a read-only transaction like they do in the application.
+        ReplicaReads replicaReads = new ReplicaReads(transactionManager, "", 5, 10000);
+        jwtFilter = new JwtFilter(new CustomUserDetailsService(userRepository, userDetailsCache, replicaReads), jwtService,
+                blacklistTokenService, new JwtFilterMetrics(meterRegistry), 1000);
+
+        // One pass up front, a broken setup would otherwise only show up as suspiciously fast numbers.
+        Exchange exchange = new Exchange();
+        exchange.setup(this);
+        if (authenticate(exchange, exchange.request) == null) {
+            throw new IllegalStateException("Request was not authenticated, status " + exchange.response.getStatus());
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        entityManagerFactory.close();
+        dataSource.close();
+    }
+
+    @Benchmark
+    public Authentication filterAuthenticatedRequest(Exchange exchange) throws Exception {
+        return authenticate(exchange, exchange.request);
+    }
+
+    @Benchmark
+    public Authentication filterLoginRequest(Exchange exchange) throws Exception {
+        return authenticate(exchange, exchange.loginRequest);
+    }
+
+    @Benchmark
+    public Authentication filterPreflightRequest(Exchange exchange) throws Exception {
+        return authenticate(exchange, exchange.preflightRequest);
+    }
+
+    private Authentication authenticate(Exchange exchange, MockHttpServletRequest request) throws Exception {
+        // Forget the previous pass, OncePerRequestFilter marks the request and the context is per request.
+        request.clearAttributes();
+        SecurityContextHolder.clearContext();
+        jwtFilter.doFilter(request, exchange.response, exchange.filterChain);
+        return SecurityContextHolder.getContext().getAuthentication();
+    }
+
+    // Spring Data repository on H2, the same entity mapping and queries as against MySQL.
+    private UserRepository userRepository(UserDetailsCache userDetailsCache, SessionService sessionService) {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1");
+        dataSource.setUsername("sa");
+
+        // Hibernate has Spring create UserChangeListener, which needs the cache it evicts from
+        // and the sessions it revokes on a role change.
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton("userDetailsCache", userDetailsCache);
+        beanFactory.registerSingleton("sessionService", sessionService);
+
+        LocalContainerEntityManagerFactoryBean factoryBean = new LocalContainerEntityManagerFactoryBean();
+        factoryBean.setDataSource(dataSource);
+        factoryBean.setPackagesToScan(User.class.getPackageName());
+        factoryBean.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+        factoryBean.setJpaPropertyMap(Map.of(
+                "hibernate.hbm2ddl.auto", "create-drop",
+                "hibernate.resource.beans.container", new SpringBeanContainer(beanFactory)));
+        factoryBean.afterPropertiesSet();
+        entityManagerFactory = factoryBean.getObject();
+
+        return new JpaRepositoryFactory(SharedEntityManagerCreator.createSharedEntityManager(entityManagerFactory))
+                .getRepository(UserRepository.class);
+    }
+}
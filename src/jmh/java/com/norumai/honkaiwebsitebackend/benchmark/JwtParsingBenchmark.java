@@ -0,0 +1,115 @@
+package com.norumai.honkaiwebsitebackend.benchmark;
+
+import com.norumai.honkaiwebsitebackend.model.User;
+import com.norumai.honkaiwebsitebackend.service.JWTService;
+import com.norumai.honkaiwebsitebackend.util.FileJwtKeyManager;
+import com.norumai.honkaiwebsitebackend.util.VerifiedTokenCache;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.PublicKey;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+// Compares the old per-request token handling (parser rebuilt and signature verified four times, plus split())
+// against verifying once with a shared parser, and against a repeat request served from the verified token cache.
+// Both paths verify the same token with the same key, so only the number of verifications differs.
+// Signing a new token (login and refresh) and extractEmail (logout) are measured alongside.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(3)
+public class JwtParsingBenchmark {
+
+    @Param({"EdDSA", "ES256"})
+    private String algorithm;
+
+    private PublicKey verificationKey;
+
+    private JWTService jwtService;
+    private JWTService cachingJwtService;
+    private String token;
+    private String cachedToken;
+    private UserDetails userDetails;
+    private User user;
+
+    @Setup
+    public void setup() throws IOException {
+        user = new User();
+        user.setId(1L);
+        user.setUsername("testuser");
+        user.setEmail("test@example.com");
+        FileJwtKeyManager keyManager = new FileJwtKeyManager(
+                Files.createTempDirectory("jwt-keys").toString(), algorithm, 30, 300, 60, 900);
+        jwtService = new JWTService(keyManager,
+                new VerifiedTokenCache(null, new SimpleMeterRegistry(), false, 0), true, 1, 900);
+        token = jwtService.generateToken(user);
+        verificationKey = keyManager.signingKey().publicKey();
+        cachingJwtService = new JWTService(keyManager,
+                new VerifiedTokenCache(null, new SimpleMeterRegistry(), true, 1000), true, 1, 900);
+        cachedToken = cachingJwtService.generateToken(user);
+        userDetails = new org.springframework.security.core.userdetails.User(
+                "test@example.com", "password", Collections.emptyList());
+    }
+
+    @Benchmark
+    public boolean legacyParseFourTimes() {
+        if (token.split("\\.").length != 3) {
+            return false;
+        }
+        // extractEmail in the filter, then extractEmail and isTokenExpired twice in validateToken.
+        String email = legacyParse().getSubject();
+        boolean valid = email.equals(legacyParse().getSubject());
+        valid &= !legacyParse().getExpiration().before(new Date());
+        valid &= !legacyParse().getExpiration().before(new Date());
+        return valid;
+    }
+
+    @Benchmark
+    public boolean verifyOnce() {
+        JWTService.VerifiedToken verifiedToken = jwtService.verifyToken(token);
+        return jwtService.validateToken(verifiedToken, userDetails);
+    }
+
+    @Benchmark
+    public boolean verifyCached() {
+        JWTService.VerifiedToken verifiedToken = cachingJwtService.verifyToken(cachedToken);
+        return cachingJwtService.validateToken(verifiedToken, userDetails);
+    }
+
+    @Benchmark
+    public String generateToken() {
+        return jwtService.generateToken(user);
+    }
+
+    @Benchmark
+    public String extractEmail() {
+        return jwtService.extractEmail(token);
+    }
+
+    private Claims legacyParse() {
+        return Jwts.parser()
+                .verifyWith(verificationKey)
+                .build()
+                .parseSignedClaims(token)
+                .getPayload();
+    }
+}
@@ -0,0 +1,89 @@
+package com.norumai.honkaiwebsitebackend.benchmark;
+
+import com.norumai.honkaiwebsitebackend.util.BinaryRedisCodec;
+import com.norumai.honkaiwebsitebackend.util.Jackson2JsonRedisCodec;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+// Encode and decode cost of a blacklist entry (key plus email value) for the JSON and binary codecs.
+// Run with -prof gc to compare allocation rates.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(3)
+public class RedisCodecBenchmark {
+
+    private static final String KEY = "jwt-blacklist:9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08";
+    private static final String VALUE = "test@example.com";
+
+    private Jackson2JsonRedisCodec<String, Object> jsonCodec;
+    private BinaryRedisCodec binaryCodec;
+    private ByteBuf target;
+    private ByteBuffer jsonKey;
+    private ByteBuffer jsonValue;
+    private ByteBuffer binaryKey;
+    private ByteBuffer binaryValue;
+
+    @Setup
+    public void setup() {
+        jsonCodec = new Jackson2JsonRedisCodec<>(String.class, Object.class);
+        binaryCodec = new BinaryRedisCodec();
+        // Stands in for the pooled buffer Lettuce encodes commands into.
+        target = Unpooled.buffer(256);
+
+        jsonKey = jsonCodec.encodeKey(KEY);
+        jsonValue = jsonCodec.encodeValue(VALUE);
+        binaryKey = binaryCodec.encodeKey(KEY);
+        binaryValue = binaryCodec.encodeValue(VALUE);
+
+        if (!KEY.equals(binaryCodec.decodeKey(binaryKey.duplicate()))
+                || !VALUE.equals(binaryCodec.decodeValue(binaryValue.duplicate()))
+                || !VALUE.equals(binaryCodec.decodeValue(jsonValue.duplicate()))) {
+            throw new IllegalStateException("Binary codec does not round trip.");
+        }
+    }
+
+    @Benchmark
+    public int jsonEncode() {
+        // Lettuce copies the returned buffers into its own, so include that copy.
+        target.clear();
+        target.writeBytes(jsonCodec.encodeKey(KEY));
+        target.writeBytes(jsonCodec.encodeValue(VALUE));
+        return target.writerIndex();
+    }
+
+    @Benchmark
+    public int binaryEncode() {
+        target.clear();
+        binaryCodec.encodeKey(KEY, target);
+        binaryCodec.encodeValue(VALUE, target);
+        return target.writerIndex();
+    }
+
+    @Benchmark
+    public Object jsonDecode() {
+        jsonCodec.decodeKey(jsonKey.duplicate());
+        return jsonCodec.decodeValue(jsonValue.duplicate());
+    }
+
+    @Benchmark
+    public Object binaryDecode() {
+        binaryCodec.decodeKey(binaryKey.duplicate());
+        return binaryCodec.decodeValue(binaryValue.duplicate());
+    }
+}
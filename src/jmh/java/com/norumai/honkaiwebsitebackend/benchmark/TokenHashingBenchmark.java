@@ -0,0 +1,75 @@
+package com.norumai.honkaiwebsitebackend.benchmark;
+
+import com.norumai.honkaiwebsitebackend.service.BlacklistTokenService;
+import com.norumai.honkaiwebsitebackend.util.BlacklistBloomFilter;
+import com.norumai.honkaiwebsitebackend.util.BlacklistNearCache;
+import com.norumai.honkaiwebsitebackend.util.RecentRevocations;
+import com.norumai.honkaiwebsitebackend.util.RevocationWatermarks;
+import com.norumai.honkaiwebsitebackend.util.TokenHasher;
+import com.norumai.honkaiwebsitebackend.util.VerifiedTokenCache;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.concurrent.TimeUnit;
+
+// Old per-call MessageDigest + BigInteger hex against the pooled hasher, and a near-cache hit in isTokenBlacklisted.
+// Run with -prof gc to see bytes allocated per call.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(3)
+public class TokenHashingBenchmark {
+
+    private static final String TOKEN = "eyJhbGciOiJIUzI1NiJ9"
+            + ".eyJzdWIiOiJ0ZXN0QGV4YW1wbGUuY29tIiwiaWF0IjoxNzAwMDAwMDAwLCJleHAiOjE3MDAwMDcyMDB9"
+            + ".c2lnbmF0dXJlc2lnbmF0dXJlc2lnbmF0dXJlc2lnbmF0dXJl";
+
+    private BlacklistTokenService blacklistTokenService;
+
+    @Setup
+    public void setup() {
+        // Only the in-memory tiers are exercised, Redis is never reached on a near-cache hit.
+        BlacklistNearCache nearCache = new BlacklistNearCache(null, new SimpleMeterRegistry(), true, 1000, 900);
+        nearCache.subscribed(BlacklistNearCache.CHANNEL, 1);
+        nearCache.putLookupResult(TokenHasher.hash(TOKEN), false, nearCache.generation());
+
+        blacklistTokenService = new BlacklistTokenService(null, null, null, null, nearCache,
+                new BlacklistBloomFilter(null, null, null, new SimpleMeterRegistry(), false, 1000, 0.01, 900),
+                new VerifiedTokenCache(null, new SimpleMeterRegistry(), true, 1000),
+                new RecentRevocations(null, new SimpleMeterRegistry(), 1000, 900),
+                new RevocationWatermarks(null, new SimpleMeterRegistry(), 1000, 1209600),
+                CircuitBreakerRegistry.ofDefaults(), new SimpleMeterRegistry(), "fail-open", 500, 900, 1209600);
+    }
+
+    @Benchmark
+    public String legacyHash() throws Exception {
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        byte[] hash = md.digest(TOKEN.getBytes(StandardCharsets.UTF_8));
+        return new BigInteger(1, hash).toString(16);
+    }
+
+    @Benchmark
+    public String pooledHash() {
+        return TokenHasher.hash(TOKEN);
+    }
+
+    @Benchmark
+    public boolean isTokenBlacklistedNearCacheHit() {
+        return blacklistTokenService.isTokenBlacklisted(TOKEN);
+    }
+}
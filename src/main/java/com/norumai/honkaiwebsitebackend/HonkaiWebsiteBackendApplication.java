@@ -35,6 +35,11 @@ public class HonkaiWebsiteBackendApplication {
         System.setProperty("SSL_KEYSTORE_PATH", dotenv.get("SSL_KEYSTORE_PATH"));
         System.setProperty("SSL_KEYSTORE_PASSWORD", dotenv.get("SSL_KEYSTORE_PASSWORD"));
 
+        // Optional, falling back to the same defaults as application.properties
+        System.setProperty("MYSQL_REPLICA_URLS", dotenv.get("MYSQL_REPLICA_URLS", ""));
+        System.setProperty("JWT_KEYS_DIRECTORY", dotenv.get("JWT_KEYS_DIRECTORY", "keys"));
+        System.setProperty("MANAGEMENT_PORT", dotenv.get("MANAGEMENT_PORT", "9464"));
+
         logger.info("Application starting...");
         SpringApplication.run(HonkaiWebsiteBackendApplication.class, args);
     }
@@ -0,0 +1,107 @@
+package com.norumai.honkaiwebsitebackend.config;
+
+import com.norumai.honkaiwebsitebackend.util.ReplicaRoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+// Primary for writes and read-write transactions, replicas (datasource.replica.urls) for read-only transactions.
+// Without replicas this is the same single Hikari pool Spring Boot would create.
+// Each side has its own pool settings: spring.datasource.hikari.* for the primary, datasource.replica.hikari.* on top
+// of those for the replicas.
+@Configuration
+public class DataSourceConfig {
+    private static final Logger logger = LoggerFactory.getLogger(DataSourceConfig.class);
+
+    // Comma separated JDBC URLs, credentials default to the primary's.
+    @Value("${datasource.replica.urls:}")
+    private String replicaUrls;
+
+    @Value("${datasource.replica.username:${spring.datasource.username:}}")
+    private String replicaUsername;
+
+    @Value("${datasource.replica.password:${spring.datasource.password:}}")
+    private String replicaPassword;
+
+    @Bean
+    public DataSource dataSource(DataSourceProperties properties, Environment environment, MeterRegistry meterRegistry) {
+        Binder binder = Binder.get(environment);
+        HikariDataSource primary = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        configurePool(primary, "primary", binder, meterRegistry, "spring.datasource.hikari");
+
+        List<HikariDataSource> replicas = new ArrayList<>();
+        for (String url : replicaUrls.split(",")) {
+            if (url.isBlank()) {
+                continue;
+            }
+            HikariDataSource replica = DataSourceBuilder.create()
+                    .type(HikariDataSource.class)
+                    .driverClassName(properties.determineDriverClassName())
+                    .url(url.trim())
+                    .username(replicaUsername)
+                    .password(replicaPassword)
+                    .build();
+            // Replica connections are read-only, so they never need switching back and forth per transaction.
+            replica.setReadOnly(true);
+            configurePool(replica, "replica-" + (replicas.size() + 1), binder, meterRegistry,
+                    "spring.datasource.hikari", "datasource.replica.hikari");
+            replicas.add(replica);
+        }
+
+        if (replicas.isEmpty()) {
+            logger.info("No database replicas configured, every query goes to the primary.");
+            return primary;
+        }
+
+        // Connections are only taken once the first statement runs, by then the transaction has marked them read-only
+        // or not, which decides between the primary and the replicas.
+        logger.info("Read-only transactions will be served by {} database replicas.", replicas.size());
+        ReplicatedDataSource dataSource = new ReplicatedDataSource(primary, replicas);
+        dataSource.setTargetDataSource(primary);
+        dataSource.setReadOnlyDataSource(new ReplicaRoutingDataSource(replicas, primary));
+        dataSource.afterPropertiesSet();
+        return dataSource;
+    }
+
+    private static void configurePool(HikariDataSource dataSource, String poolName, Binder binder,
+                                      MeterRegistry meterRegistry, String... prefixes) {
+        // Later prefixes override earlier ones.
+        for (String prefix : prefixes) {
+            binder.bind(prefix, Bindable.ofInstance(dataSource));
+        }
+        dataSource.setPoolName(poolName);
+        dataSource.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+    }
+
+    // Owns the pools behind it, closed together with the context.
+    private static class ReplicatedDataSource extends LazyConnectionDataSourceProxy implements AutoCloseable {
+        private final HikariDataSource primary;
+        private final List<HikariDataSource> replicas;
+
+        private ReplicatedDataSource(HikariDataSource primary, List<HikariDataSource> replicas) {
+            this.primary = primary;
+            this.replicas = replicas;
+        }
+
+        @Override
+        public void close() {
+            replicas.forEach(HikariDataSource::close);
+            primary.close();
+        }
+    }
+}
@@ -1,36 +1,73 @@
 package com.norumai.honkaiwebsitebackend.config;
 
-import com.norumai.honkaiwebsitebackend.util.Jackson2JsonRedisCodec;
+import io.lettuce.core.AbstractRedisClient;
 import io.lettuce.core.ClientOptions;
+import io.lettuce.core.ReadFrom;
 import io.lettuce.core.RedisClient;
 import io.lettuce.core.RedisURI;
+import io.lettuce.core.api.StatefulConnection;
 import io.lettuce.core.api.StatefulRedisConnection;
-import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.cluster.ClusterClientOptions;
+import io.lettuce.core.cluster.ClusterTopologyRefreshOptions;
+import io.lettuce.core.cluster.RedisClusterClient;
+import io.lettuce.core.cluster.api.StatefulRedisClusterConnection;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.lettuce.core.cluster.api.reactive.RedisClusterReactiveCommands;
+import io.lettuce.core.cluster.api.sync.RedisClusterCommands;
+import io.lettuce.core.codec.RedisCodec;
+import io.lettuce.core.codec.StringCodec;
+import io.lettuce.core.masterreplica.MasterReplica;
+import io.lettuce.core.masterreplica.StatefulRedisMasterReplicaConnection;
+import io.lettuce.core.metrics.MicrometerCommandLatencyRecorder;
+import io.lettuce.core.metrics.MicrometerOptions;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
+import io.lettuce.core.resource.ClientResources;
+import io.lettuce.core.support.ConnectionPoolSupport;
+import org.apache.commons.pool2.impl.GenericObjectPool;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 
+// Standalone, Sentinel or Cluster, chosen by redis.mode. Command beans are typed as the cluster interfaces,
+// which the standalone ones extend, so services work unchanged in every mode.
 @Configuration
 public class LettuceRedisConfig {
     private static final Logger logger = LoggerFactory.getLogger(LettuceRedisConfig.class);
 
-    private final Jackson2JsonRedisCodec<String, Object> jackson2JsonRedisCodec;
+    private final RedisCodec<String, Object> redisCodec;
     @Autowired
-    public LettuceRedisConfig(Jackson2JsonRedisCodec<String, Object> jackson2JsonRedisCodec) {
-        this.jackson2JsonRedisCodec = jackson2JsonRedisCodec;
+    public LettuceRedisConfig(RedisCodec<String, Object> redisCodec) {
+        this.redisCodec = redisCodec;
     }
 
+    @Value("${redis.mode:standalone}")
+    private String mode;
+
     @Value("${redis.host}")
     private String host;
 
     @Value("${redis.port}")
     private int port;
 
+    // Comma separated host:port list of sentinels or cluster seed nodes, falls back to host and port.
+    @Value("${redis.nodes:}")
+    private String nodes;
+
+    @Value("${redis.sentinel.master:mymaster}")
+    private String sentinelMaster;
+
     @Value("${redis.username:}")    // Use :{some value} to set a default value.
     private String username;
 
@@ -43,22 +80,105 @@ public class LettuceRedisConfig {
     @Value("${redis.timeout:3000}")
     private int timeout;
 
+    // Where read-mostly lookups go, e.g. replicaPreferred. Writes always go to the primary.
+    @Value("${redis.read-from:upstream}")
+    private String readFrom;
+
+    @Value("${redis.cluster.refresh-period-seconds:60}")
+    private long clusterRefreshPeriodSeconds;
+
+    // Exports lettuce.command.completion and lettuce.command.firstresponse as histograms, so percentiles can be
+    // aggregated across nodes. The lower bound keeps the buckets fine enough for sub-millisecond commands.
+    @Value("${redis.metrics.histogram:true}")
+    private boolean metricsHistogram;
+
+    @Value("${redis.metrics.min-latency-micros:100}")
+    private long metricsMinLatencyMicros;
+
+    private boolean isCluster() {
+        return "cluster".equalsIgnoreCase(mode);
+    }
+
+    private boolean isSentinel() {
+        return "sentinel".equalsIgnoreCase(mode);
+    }
+
     @Bean
     public RedisURI redisURI() {
+        if (isSentinel()) {
+            logger.info("Initializing Redis URI for Sentinel master {} via {}...", sentinelMaster, nodeList());
+            RedisURI.Builder builder = RedisURI.builder().withSentinelMasterId(sentinelMaster);
+            for (String node : nodeList()) {
+                String[] hostAndPort = node.split(":");
+                builder.withSentinel(hostAndPort[0].trim(), Integer.parseInt(hostAndPort[1].trim()));
+            }
+            return applyCommonSettings(builder);
+        }
+
         logger.info("Initializing Redis URI with host: {} and port: {}...", host, port);
-        RedisURI.Builder builder = RedisURI.builder()
-                .withHost(host)
-                .withPort(port)
-                .withDatabase(database)
+        return applyCommonSettings(RedisURI.builder().withHost(host).withPort(port));
+    }
+
+    private RedisURI applyCommonSettings(RedisURI.Builder builder) {
+        builder.withDatabase(database)
                 .withAuthentication(username, password)
                 .withTimeout(Duration.ofMillis(timeout));
 
         return builder.build();
     }
 
+    private List<String> nodeList() {
+        List<String> nodeList = new ArrayList<>();
+        for (String node : nodes.split(",")) {
+            if (!node.isBlank()) {
+                nodeList.add(node.trim());
+            }
+        }
+        if (nodeList.isEmpty()) {
+            nodeList.add(host + ":" + port);
+        }
+        return nodeList;
+    }
+
+    // Shared by every client, command latencies are recorded per command type into Micrometer.
     @Bean(destroyMethod = "shutdown")
-    public RedisClient redisClient(RedisURI redisURI) {
-        RedisClient redisClient = RedisClient.create(redisURI);
+    public ClientResources redisClientResources(MeterRegistry meterRegistry) {
+        MicrometerOptions options = MicrometerOptions.builder()
+                .histogram(metricsHistogram)
+                .minLatency(Duration.ofNanos(metricsMinLatencyMicros * 1000))
+                .build();
+        return ClientResources.builder()
+                .commandLatencyRecorder(new MicrometerCommandLatencyRecorder(meterRegistry, options))
+                .build();
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public AbstractRedisClient redisClient(RedisURI redisURI, ClientResources redisClientResources) {
+        if (isCluster()) {
+            List<RedisURI> seedNodes = new ArrayList<>();
+            for (String node : nodeList()) {
+                String[] hostAndPort = node.split(":");
+                seedNodes.add(applyCommonSettings(RedisURI.builder()
+                        .withHost(hostAndPort[0].trim())
+                        .withPort(Integer.parseInt(hostAndPort[1].trim()))));
+            }
+
+            RedisClusterClient clusterClient = RedisClusterClient.create(redisClientResources, seedNodes);
+            // Failovers and resharding are picked up as soon as a MOVED/ASK or a reconnect shows up,
+            // the periodic refresh catches anything the triggers miss.
+            clusterClient.setOptions(ClusterClientOptions.builder()
+                    .topologyRefreshOptions(ClusterTopologyRefreshOptions.builder()
+                            .enableAllAdaptiveRefreshTriggers()
+                            .enablePeriodicRefresh(Duration.ofSeconds(clusterRefreshPeriodSeconds))
+                            .build())
+                    .disconnectedBehavior(ClientOptions.DisconnectedBehavior.REJECT_COMMANDS)
+                    .autoReconnect(true)
+                    .build());
+            logger.debug("Initializing Redis Cluster Client: {}", clusterClient);
+            return clusterClient;
+        }
+
+        RedisClient redisClient = RedisClient.create(redisClientResources, redisURI);
         redisClient.setOptions(ClientOptions.builder()
                 .disconnectedBehavior(ClientOptions.DisconnectedBehavior.REJECT_COMMANDS)
                 .autoReconnect(true)
@@ -67,15 +187,144 @@ public class LettuceRedisConfig {
         return redisClient;
     }
 
+    // Standalone without replica reads is a plain connection, everything else discovers its replicas.
+    private StatefulConnection<String, Object> connect(AbstractRedisClient client, RedisURI redisURI, ReadFrom readFrom) {
+        return connect(client, redisURI, readFrom, redisCodec);
+    }
+
+    private <V> StatefulConnection<String, V> connect(AbstractRedisClient client, RedisURI redisURI, ReadFrom readFrom,
+                                                      RedisCodec<String, V> codec) {
+        if (client instanceof RedisClusterClient clusterClient) {
+            StatefulRedisClusterConnection<String, V> connection = clusterClient.connect(codec);
+            connection.setReadFrom(readFrom);
+            return connection;
+        }
+
+        RedisClient redisClient = (RedisClient) client;
+        if (!isSentinel() && readFrom == ReadFrom.UPSTREAM) {
+            return redisClient.connect(codec);
+        }
+
+        StatefulRedisMasterReplicaConnection<String, V> connection =
+                MasterReplica.connect(redisClient, codec, redisURI);
+        connection.setReadFrom(readFrom);
+        return connection;
+    }
+
     @Bean(destroyMethod = "close")
-    public StatefulRedisConnection<String, Object> redisConnection(RedisClient redisClient) {
+    @Primary
+    public StatefulConnection<String, Object> redisConnection(AbstractRedisClient redisClient, RedisURI redisURI) {
         logger.debug("Initializing connection to Redis database: {}", redisClient);
-        return redisClient.connect(jackson2JsonRedisCodec);
+        return connect(redisClient, redisURI, ReadFrom.UPSTREAM);
+    }
+
+    // Separate connection for read-mostly lookups, or the primary connection when reads stay on the primary.
+    @Bean(destroyMethod = "close")
+    public StatefulConnection<String, Object> redisReadConnection(AbstractRedisClient redisClient, RedisURI redisURI,
+                                                                  StatefulConnection<String, Object> redisConnection) {
+        ReadFrom readFromSetting = ReadFrom.valueOf(readFrom);
+        if (readFromSetting == ReadFrom.UPSTREAM) {
+            return redisConnection;
+        }
+
+        logger.info("Read-mostly Redis lookups will be served from: {}.", readFrom);
+        return connect(redisClient, redisURI, readFromSetting);
     }
 
     @Bean
-    public RedisCommands<String, Object> redisCommands(StatefulRedisConnection<String, Object> redisConnection) {
+    @Primary
+    public RedisClusterCommands<String, Object> redisCommands(StatefulConnection<String, Object> redisConnection) {
         logger.info("Commands can be now executed to Redis database.");
-        return redisConnection.sync();
+        return sync(redisConnection);
+    }
+
+    // Non-blocking views of the same shared connection, commands are pipelined by Lettuce as they are issued.
+    @Bean
+    @Primary
+    public RedisClusterAsyncCommands<String, Object> redisAsyncCommands(StatefulConnection<String, Object> redisConnection) {
+        return async(redisConnection);
+    }
+
+    @Bean
+    public RedisClusterReactiveCommands<String, Object> redisReactiveCommands(StatefulConnection<String, Object> redisConnection) {
+        return redisConnection instanceof StatefulRedisClusterConnection<String, Object> clusterConnection
+                ? clusterConnection.reactive()
+                : ((StatefulRedisConnection<String, Object>) redisConnection).reactive();
+    }
+
+    @Bean
+    public RedisClusterCommands<String, Object> redisReadCommands(
+            @Qualifier("redisReadConnection") StatefulConnection<String, Object> redisReadConnection) {
+        return sync(redisReadConnection);
+    }
+
+    @Bean
+    public RedisClusterAsyncCommands<String, Object> redisReadAsyncCommands(
+            @Qualifier("redisReadConnection") StatefulConnection<String, Object> redisReadConnection) {
+        return async(redisReadConnection);
+    }
+
+    // Plain UTF-8 values for Lua scripts, which compare and parse the raw bytes instead of codec encoded values.
+    @Bean(destroyMethod = "close")
+    public StatefulConnection<String, String> redisStringConnection(AbstractRedisClient redisClient, RedisURI redisURI) {
+        logger.debug("Initializing string connection to Redis database: {}", redisClient);
+        return connect(redisClient, redisURI, ReadFrom.UPSTREAM, StringCodec.UTF8);
+    }
+
+    @Bean
+    public RedisClusterCommands<String, String> redisStringCommands(StatefulConnection<String, String> redisStringConnection) {
+        return sync(redisStringConnection);
+    }
+
+    @Bean
+    public RedisClusterAsyncCommands<String, String> redisStringAsyncCommands(
+            StatefulConnection<String, String> redisStringConnection) {
+        return async(redisStringConnection);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> RedisClusterCommands<String, V> sync(StatefulConnection<String, V> connection) {
+        return connection instanceof StatefulRedisClusterConnection<?, ?> clusterConnection
+                ? ((StatefulRedisClusterConnection<String, V>) clusterConnection).sync()
+                : ((StatefulRedisConnection<String, V>) connection).sync();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> RedisClusterAsyncCommands<String, V> async(StatefulConnection<String, V> connection) {
+        return connection instanceof StatefulRedisClusterConnection<?, ?> clusterConnection
+                ? ((StatefulRedisClusterConnection<String, V>) clusterConnection).async()
+                : ((StatefulRedisConnection<String, V>) connection).async();
+    }
+
+    // Dedicated connections for commands that must not share the multiplexed connection (MULTI/EXEC, blocking pops).
+    // Borrow with try-with-resources, closing a pooled connection returns it to the pool.
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "redis.pool.enabled", havingValue = "true")
+    public GenericObjectPool<StatefulConnection<String, Object>> redisConnectionPool(
+            AbstractRedisClient redisClient,
+            RedisURI redisURI,
+            @Value("${redis.pool.max-total:8}") int maxTotal,
+            @Value("${redis.pool.max-idle:8}") int maxIdle,
+            @Value("${redis.pool.min-idle:0}") int minIdle) {
+        logger.info("Initializing Redis connection pool with up to {} connections...", maxTotal);
+        GenericObjectPoolConfig<StatefulConnection<String, Object>> poolConfig = new GenericObjectPoolConfig<>();
+        poolConfig.setMaxTotal(maxTotal);
+        poolConfig.setMaxIdle(maxIdle);
+        poolConfig.setMinIdle(minIdle);
+        poolConfig.setJmxEnabled(false);
+        return ConnectionPoolSupport.createGenericObjectPool(
+                () -> connect(redisClient, redisURI, ReadFrom.UPSTREAM), poolConfig);
+    }
+
+    // Subscribed connections cannot issue regular commands, so pub/sub gets its own connection.
+    // Cluster pub/sub connections are broadcast cluster-wide and share the same interface.
+    @Bean(destroyMethod = "close")
+    public StatefulRedisPubSubConnection<String, Object> redisPubSubConnection(AbstractRedisClient redisClient,
+                                                                               RedisURI redisURI) {
+        logger.debug("Initializing pub/sub connection to Redis database: {}", redisClient);
+        if (redisClient instanceof RedisClusterClient clusterClient) {
+            return clusterClient.connectPubSub(redisCodec);
+        }
+        return ((RedisClient) redisClient).connectPubSub(redisCodec, redisURI);
     }
 }
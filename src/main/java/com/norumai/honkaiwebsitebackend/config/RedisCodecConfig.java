@@ -1,8 +1,11 @@
 package com.norumai.honkaiwebsitebackend.config;
 
+import com.norumai.honkaiwebsitebackend.util.BinaryRedisCodec;
 import com.norumai.honkaiwebsitebackend.util.Jackson2JsonRedisCodec;
+import io.lettuce.core.codec.RedisCodec;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -10,9 +13,15 @@ import org.springframework.context.annotation.Configuration;
 public class RedisCodecConfig {
     private final static Logger logger = LoggerFactory.getLogger(RedisCodecConfig.class);
 
+    // Keys are encoded differently by each codec, so every node sharing a Redis must use the same one.
     @Bean
-    public Jackson2JsonRedisCodec<String, Object> objectRedisCodec() {
-        logger.info("Any Object classes can be serialized/deserialized using Redis.");
-        return new Jackson2JsonRedisCodec<>(String.class, Object.class);
+    public RedisCodec<String, Object> objectRedisCodec(@Value("${redis.codec:binary}") String codec) {
+        if ("json".equalsIgnoreCase(codec)) {
+            logger.info("Any Object classes can be serialized/deserialized using Redis.");
+            return new Jackson2JsonRedisCodec<>(String.class, Object.class);
+        }
+
+        logger.info("Redis keys and values are stored in the binary format.");
+        return new BinaryRedisCodec();
     }
 }
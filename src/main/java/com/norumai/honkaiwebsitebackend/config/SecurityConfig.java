@@ -1,10 +1,17 @@
 package com.norumai.honkaiwebsitebackend.config;
 
 import com.norumai.honkaiwebsitebackend.service.CustomUserDetailsService;
+import com.norumai.honkaiwebsitebackend.util.BCryptStrengthCalibrator;
+import com.norumai.honkaiwebsitebackend.util.BoundedPasswordEncoder;
 import com.norumai.honkaiwebsitebackend.util.JwtFilter;
+import com.norumai.honkaiwebsitebackend.util.PasswordHashingExecutor;
+import com.norumai.honkaiwebsitebackend.util.RateLimitFilter;
+import jakarta.servlet.DispatcherType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -15,9 +22,13 @@ import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 
+import java.util.Map;
+
 
 @Configuration
 @EnableWebSecurity
@@ -25,19 +36,44 @@ public class SecurityConfig {
 
     private final CustomUserDetailsService userDetailsService;
     private final JwtFilter jwtFilter;
+    private final RateLimitFilter rateLimitFilter;
     private final CorsConfig corsConfig;
+    private final PasswordHashingExecutor passwordHashingExecutor;
+    private final int bcryptStrength;
+    private final long bcryptTargetMillis;
+    private final int bcryptMinStrength;
     private static final Logger logger = LoggerFactory.getLogger(SecurityConfig.class);
 
     @Autowired
-    public SecurityConfig(CustomUserDetailsService userDetailsService, JwtFilter jwtFilter, CorsConfig corsConfig) {
+    public SecurityConfig(CustomUserDetailsService userDetailsService, JwtFilter jwtFilter,
+                          RateLimitFilter rateLimitFilter, CorsConfig corsConfig,
+                          PasswordHashingExecutor passwordHashingExecutor,
+                          @Value("${password-hashing.bcrypt.strength:0}") int bcryptStrength,
+                          @Value("${password-hashing.bcrypt.target-millis:250}") long bcryptTargetMillis,
+                          @Value("${password-hashing.bcrypt.min-strength:10}") int bcryptMinStrength) {
         this.userDetailsService = userDetailsService;
         this.jwtFilter = jwtFilter;
+        this.rateLimitFilter = rateLimitFilter;
         this.corsConfig = corsConfig;
+        this.passwordHashingExecutor = passwordHashingExecutor;
+        this.bcryptStrength = bcryptStrength;
+        this.bcryptTargetMillis = bcryptTargetMillis;
+        this.bcryptMinStrength = bcryptMinStrength;
     }
 
+    // BCrypt runs on its own bounded pool, both for registration and the DaoAuthenticationProvider login path.
+    // New hashes are stored as {bcrypt}, older unprefixed hashes still match and get rehashed on their next login.
     @Bean
-    public BCryptPasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public PasswordEncoder passwordEncoder() {
+        int strength = bcryptStrength > 0
+                ? bcryptStrength
+                : BCryptStrengthCalibrator.calibrate(bcryptTargetMillis, bcryptMinStrength);
+        BCryptPasswordEncoder bCryptPasswordEncoder = new BCryptPasswordEncoder(strength);
+
+        DelegatingPasswordEncoder delegatingPasswordEncoder =
+                new DelegatingPasswordEncoder("bcrypt", Map.of("bcrypt", bCryptPasswordEncoder));
+        delegatingPasswordEncoder.setDefaultPasswordEncoderForMatches(bCryptPasswordEncoder);
+        return new BoundedPasswordEncoder(delegatingPasswordEncoder, passwordHashingExecutor);
     }
 
     @Bean
@@ -47,14 +83,22 @@ public class SecurityConfig {
                 .cors(cors -> cors.configurationSource(corsConfig.corsConfiguration()))
                 .csrf(csrf -> csrf.disable())
                 .authorizeHttpRequests(authorizeRequests -> authorizeRequests
-                        .requestMatchers("/auth/login", "/auth/register").permitAll()
+                        // Streamed responses finish on an async dispatch, the request itself was authorized already
+                        // and a stateless session has nothing to restore the authentication from.
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
+                        .requestMatchers(JwtFilter.PUBLIC_PATHS.toArray(String[]::new)).permitAll()
+                        // Only served on the internal management port, scraped without a token.
+                        .requestMatchers(EndpointRequest.to("health", "prometheus")).permitAll()
+                        .requestMatchers("/admin/**").hasRole("ADMIN")
                         .anyRequest().authenticated()
                 )
                 .sessionManagement(session
                         -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS)
                 )
                 .authenticationProvider(authenticationProvider())
-                .addFilterBefore(jwtFilter, UsernamePasswordAuthenticationFilter.class);
+                .addFilterBefore(jwtFilter, UsernamePasswordAuthenticationFilter.class)
+                // Throttled attempts are rejected before any token or password work is done.
+                .addFilterBefore(rateLimitFilter, JwtFilter.class);
         logger.info("Security filter chain complete.");
         return http.build();
     }
@@ -65,6 +109,8 @@ public class SecurityConfig {
         DaoAuthenticationProvider daoAuthenticationProvider = new DaoAuthenticationProvider();
         daoAuthenticationProvider.setUserDetailsService(userDetailsService);
         daoAuthenticationProvider.setPasswordEncoder(passwordEncoder());
+        // Rehashes outdated passwords right after a successful login.
+        daoAuthenticationProvider.setUserDetailsPasswordService(userDetailsService);
         return daoAuthenticationProvider;
     }
 
@@ -0,0 +1,47 @@
+package com.norumai.honkaiwebsitebackend.controller;
+
+import com.norumai.honkaiwebsitebackend.dto.RevokeSessionsRequest;
+import com.norumai.honkaiwebsitebackend.service.SessionService;
+import jakarta.validation.Valid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+// Restricted to the ADMIN role in SecurityConfig.
+@RestController
+@RequestMapping("/admin")
+public class AdminController {
+
+    private final SessionService sessionService;
+    private static final Logger logger = LoggerFactory.getLogger(AdminController.class);
+
+    @Autowired
+    public AdminController(SessionService sessionService) {
+        this.sessionService = sessionService;
+    }
+
+    // Logs the given users out everywhere, e.g. after a role change or a compromised account.
+    @PostMapping("/sessions/revoke")
+    public ResponseEntity<?> revokeSessions(@Valid @RequestBody RevokeSessionsRequest revokeSessionsRequest) {
+        try {
+            int revoked = sessionService.revokeAllSessions(revokeSessionsRequest.getUserIds());
+            logger.info("Revoked all sessions of {} users.", revokeSessionsRequest.getUserIds().size());
+            return ResponseEntity.ok(Map.of(
+                    "users", revokeSessionsRequest.getUserIds().size(),
+                    "revokedSessions", revoked));
+        }
+        catch (Exception e) {
+            logger.error("Error revoking sessions.", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Sessions could not be revoked. Please try again later.");
+        }
+    }
+}
@@ -1,26 +1,42 @@
 package com.norumai.honkaiwebsitebackend.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.norumai.honkaiwebsitebackend.dto.LoginRequest;
 import com.norumai.honkaiwebsitebackend.dto.RegisterRequest;
+import com.norumai.honkaiwebsitebackend.dto.UserPage;
 import com.norumai.honkaiwebsitebackend.service.BlacklistTokenService;
 import com.norumai.honkaiwebsitebackend.service.JWTService;
+import com.norumai.honkaiwebsitebackend.service.RateLimitService;
+import com.norumai.honkaiwebsitebackend.service.RefreshTokenService;
+import com.norumai.honkaiwebsitebackend.service.SessionService;
 import com.norumai.honkaiwebsitebackend.service.UserService;
 import com.norumai.honkaiwebsitebackend.model.User;
+import com.norumai.honkaiwebsitebackend.model.UserPrincipal;
+import com.norumai.honkaiwebsitebackend.util.PasswordHashingRejectedException;
 import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.hibernate.exception.ConstraintViolationException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.http.*;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.List;
@@ -33,26 +49,49 @@ public class AuthController {
     private final JWTService jwtService;
     private final AuthenticationManager authenticationManager;
     private final BlacklistTokenService blacklistTokenService;
+    private final SessionService sessionService;
+    private final RefreshTokenService refreshTokenService;
+    private final RateLimitService rateLimitService;
+    private final ObjectMapper objectMapper;
     private static final Logger logger = LoggerFactory.getLogger(AuthController.class);
 
     private static final String GENERIC_AUTH_ERROR = "Authentication failed. Please try again later.";
     private static final String GENERIC_REGISTRATION_ERROR = "Registration could not be completed. Please try again later.";
+    private static final String SERVER_BUSY_ERROR = "Server is busy. Please try again shortly.";
+    private static final String DUPLICATE_REGISTRATION_ERROR = "Registration failed. Please try with different credentials.";
+    private static final String REFRESH_ERROR = "Session expired. Please log in again.";
+    private static final String TOO_MANY_ATTEMPTS_ERROR = "Too many attempts. Please try again later.";
+
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final int STREAM_FLUSH_ROWS = 500;
+
+    // Refresh tokens are only sent to the auth endpoints, never with regular API requests.
+    private static final String REFRESH_COOKIE = "refresh";
+    private static final String REFRESH_COOKIE_PATH = "/auth";
 
     @Autowired
-    public AuthController(UserService userService, JWTService jwtService, AuthenticationManager authenticationManager, BlacklistTokenService blacklistTokenService) {
+    public AuthController(UserService userService, JWTService jwtService, AuthenticationManager authenticationManager,
+                          BlacklistTokenService blacklistTokenService, SessionService sessionService,
+                          RefreshTokenService refreshTokenService, RateLimitService rateLimitService,
+                          ObjectMapper objectMapper) {
         this.userService = userService;
         this.jwtService = jwtService;
         this.authenticationManager = authenticationManager;
         this.blacklistTokenService = blacklistTokenService;
+        this.sessionService = sessionService;
+        this.refreshTokenService = refreshTokenService;
+        this.rateLimitService = rateLimitService;
+        this.objectMapper = objectMapper;
     }
 
-    // May delete this later, feel unnecessary.
+    // Keyset paginated, the returned nextCursor is passed as "after" to get the following page.
     @GetMapping("/users")
-    public ResponseEntity<?> getAllUsers() {
+    public ResponseEntity<?> getAllUsers(@RequestParam(value = "after", defaultValue = "0") long after,
+                                         @RequestParam(value = "limit", defaultValue = "50") int limit) {
         try {
-            List<User> users = userService.getAllUsers();
-            logger.info("All users found.");
-            return ResponseEntity.status(HttpStatus.OK).body(users);
+            UserPage page = userService.getUsers(after, Math.clamp(limit, 1, MAX_PAGE_SIZE));
+            logger.info("Users page found.");
+            return ResponseEntity.status(HttpStatus.OK).body(page);
         }
         catch (Exception e) {
             logger.error("Error getting all users.", e);
@@ -60,6 +99,36 @@ public class AuthController {
         }
     }
 
+    // Every user as newline-delimited JSON, written out while the rows are still being read.
+    @GetMapping(value = "/users/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAllUsers() {
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                int[] written = { 0 };
+                userService.forEachUser(user -> {
+                    try {
+                        generator.writeObject(user);
+                        generator.writeRaw('\n');
+                        // Hands finished rows to the client instead of buffering the whole listing.
+                        if (++written[0] % STREAM_FLUSH_ROWS == 0) {
+                            generator.flush();
+                        }
+                    }
+                    catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                logger.info("Streamed {} users.", written[0]);
+            }
+            catch (UncheckedIOException e) {
+                // Usually the client went away, the response is already committed either way.
+                logger.warn("Streaming users was aborted: {}", e.getCause().toString());
+                throw e.getCause();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
     @PostMapping(value = "/register", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     public ResponseEntity<?> registerUser(@Valid
             @RequestParam("username") String username,
@@ -75,10 +144,10 @@ public class AuthController {
                 return ResponseEntity.badRequest().body("All required fields must be provided");
             }
 
-            // Identify matching username or email.
-            if (userService.findByUsername(username).isPresent() || userService.findByEmail(email).isPresent()) {
-                logger.warn("Registration attempt with existing credentials");
-                return ResponseEntity.badRequest().body("Registration failed. Please try with different credentials.");
+            RateLimitService.Decision decision = rateLimitService.tryAcquire(RateLimitService.Scope.USERNAME, username);
+            if (!decision.allowed()) {
+                logger.warn("Registration rejected, too many attempts for the username.");
+                return tooManyAttempts(decision);
             }
 
             RegisterRequest registerRequest = new RegisterRequest();
@@ -91,6 +160,21 @@ public class AuthController {
             logger.info("Created a new user.");
             return ResponseEntity.status(HttpStatus.CREATED).body(savedUser);
         }
+        catch (PasswordHashingRejectedException e) {
+            logger.warn("Registration rejected, password hashing is saturated.");
+            return hashingUnavailable(e);
+        }
+        catch (DataIntegrityViolationException e) {
+            // Unique constraints on username and email reject existing credentials, no lookups needed beforehand.
+            if (isUniqueViolation(e)) {
+                logger.warn("Registration attempt with existing credentials");
+                return ResponseEntity.badRequest().body(DUPLICATE_REGISTRATION_ERROR);
+            }
+            // Any other constraint (e.g. a too long bio) is not the user's existing account.
+            logger.error("User registration rejected by the database", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(GENERIC_REGISTRATION_ERROR);
+        }
         catch (Exception e) {
             logger.error("User registration error", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -101,36 +185,37 @@ public class AuthController {
     @PostMapping("/login")
     public ResponseEntity<?> login(@Valid @RequestBody LoginRequest loginRequest) {
         try {
-            attemptToAuthenticate(loginRequest.getUserInput(), loginRequest.getPassword());
+            // Limited per account as well, spreading an attack over many addresses does not help.
+            RateLimitService.Decision decision = rateLimitService.tryAcquire(RateLimitService.Scope.USERNAME,
+                    loginRequest.getUserInput());
+            if (!decision.allowed()) {
+                logger.warn("Login rejected, too many attempts for the account.");
+                return tooManyAttempts(decision);
+            }
 
             // Intended user data is obtained and not the input credential with missing data.
-            User user = userService.findByEmail(loginRequest.getUserInput())
-                    .or(() -> userService.findByUsername(loginRequest.getUserInput()))
-                    .orElseThrow(() -> {
-                        logger.warn("User with inputted email is not found.");
-                        return new UsernameNotFoundException("Credentials not found.");
-                    });
+            User user = attemptToAuthenticate(loginRequest.getUserInput(), loginRequest.getPassword());
 
             // User's Token (Identity) for accessing API Requests.
             String jwtKey = jwtService.generateToken(user);
-
-            // Securing User's token behind cookie.
-            ResponseCookie jwtCookie = ResponseCookie.from("jwt", jwtKey)
-                    .httpOnly(true) // Prevent XSS attacks.
-                    .secure(true) // Protect from being intercepted.
-                    .path("/")
-                    .maxAge(7200) // 2 hours
-                    .sameSite("None")
-                    .build();
+            // Remembered under the user, so "log out all sessions" can find it later.
+            sessionService.trackSession(user, jwtKey);
+            // Renews the short-lived access token without going through the password check again.
+            String refreshToken = refreshTokenService.issue(user);
 
             Map<String, Object> responses = new HashMap<>();
             responses.put("user", user);
 
             logger.info("Successfully logged in.");
             return ResponseEntity.ok()
-                    .header(HttpHeaders.SET_COOKIE, jwtCookie.toString())
+                    .header(HttpHeaders.SET_COOKIE, jwtCookie(jwtKey, jwtService.getAccessTokenTtlSeconds()).toString())
+                    .header(HttpHeaders.SET_COOKIE, refreshCookie(refreshToken, refreshTokenService.getTtlSeconds()).toString())
                     .body(responses);
         }
+        catch (PasswordHashingRejectedException e) {
+            logger.warn("Login rejected, password hashing is saturated.");
+            return hashingUnavailable(e);
+        }
         catch (AuthenticationException e) {
             logger.error("Authentication failed: Invalid credentials or account not found.\n", e);
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid credentials or account not found.");
@@ -140,26 +225,136 @@ public class AuthController {
             return ResponseEntity.badRequest().body(GENERIC_AUTH_ERROR);
         }
     }
-    private void attemptToAuthenticate(String userInput, String password) {
+
+    // Mints a new access token and rotates the refresh token, without AuthenticationManager or MySQL.
+    @PostMapping("/refresh")
+    public ResponseEntity<?> refresh(HttpServletRequest request) {
+        try {
+            String refreshToken = findCookie(request, REFRESH_COOKIE);
+            if (refreshToken == null) {
+                logger.debug("Refresh attempted without a refresh token.");
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(REFRESH_ERROR);
+            }
+
+            RefreshTokenService.Rotation rotation = refreshTokenService.rotate(refreshToken);
+            if (rotation.status() == RefreshTokenService.Status.CONCURRENT) {
+                // Another request rotated this token a moment ago, its response carries the new cookies.
+                return ResponseEntity.status(HttpStatus.CONFLICT).body("Session is already being refreshed.");
+            }
+            if (rotation.status() != RefreshTokenService.Status.ROTATED) {
+                logger.info("Refresh rejected: {}.", rotation.status());
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                        .header(HttpHeaders.SET_COOKIE, jwtCookie("", 0).toString())
+                        .header(HttpHeaders.SET_COOKIE, refreshCookie("", 0).toString())
+                        .body(REFRESH_ERROR);
+            }
+
+            String jwtKey = jwtService.generateToken(rotation.user());
+            sessionService.trackSession(rotation.user(), jwtKey);
+
+            logger.info("Successfully refreshed the session.");
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.SET_COOKIE, jwtCookie(jwtKey, jwtService.getAccessTokenTtlSeconds()).toString())
+                    .header(HttpHeaders.SET_COOKIE, refreshCookie(rotation.refreshToken(), refreshTokenService.getTtlSeconds()).toString())
+                    .body("Session refreshed.");
+        }
+        catch (Exception e) {
+            logger.error("Refresh error", e);
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(GENERIC_AUTH_ERROR);
+        }
+    }
+
+    // Securing User's token behind cookie, a max age of 0 clears it.
+    private static ResponseCookie jwtCookie(String value, long maxAgeSeconds) {
+        return ResponseCookie.from("jwt", value)
+                .httpOnly(true) // Prevent XSS attacks.
+                .secure(true) // Protect from being intercepted.
+                .path("/")
+                .maxAge(maxAgeSeconds)
+                .sameSite("None")
+                .build();
+    }
+
+    private static ResponseCookie refreshCookie(String value, long maxAgeSeconds) {
+        return ResponseCookie.from(REFRESH_COOKIE, value)
+                .httpOnly(true)
+                .secure(true)
+                .path(REFRESH_COOKIE_PATH)
+                .maxAge(maxAgeSeconds)
+                .sameSite("None")
+                .build();
+    }
+
+    private static String findCookie(HttpServletRequest request, String name) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies != null) {
+            for (Cookie cookie : cookies) {
+                if (cookie.getName().equals(name)) {
+                    return cookie.getValue();
+                }
+            }
+        }
+        return null;
+    }
+
+    // True only when the insert hit a unique constraint, i.e. the username or email is already taken.
+    private static boolean isUniqueViolation(DataIntegrityViolationException e) {
+        if (e instanceof DuplicateKeyException) {
+            return true;
+        }
+        for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConstraintViolationException violation
+                    && violation.getKind() == ConstraintViolationException.ConstraintKind.UNIQUE) {
+                return true;
+            }
+            // SQLSTATE 23505 on H2 and PostgreSQL, error 1062 (ER_DUP_ENTRY) on MySQL.
+            if (cause instanceof SQLException sqlException
+                    && ("23505".equals(sqlException.getSQLState()) || sqlException.getErrorCode() == 1062)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Tells the client to back off instead of queueing behind a saturated hashing pool.
+    private ResponseEntity<?> hashingUnavailable(PasswordHashingRejectedException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(SERVER_BUSY_ERROR);
+    }
+
+    private ResponseEntity<?> tooManyAttempts(RateLimitService.Decision decision) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(decision.retryAfterSeconds()))
+                .body(TOO_MANY_ATTEMPTS_ERROR);
+    }
+
+    // Returns the User entity loaded during authentication, so login costs a single lookup.
+    private User attemptToAuthenticate(String userInput, String password) {
         logger.debug("Authentication attempt received");
-        if (userInput != null && userService.findByEmail(userInput).isPresent()) {
-            authenticationManager.authenticate(new UsernamePasswordAuthenticationToken(userInput, password));
-            return;
+        Authentication authentication = authenticationManager.authenticate(
+                new UsernamePasswordAuthenticationToken(userInput, password));
+
+        if (authentication.getPrincipal() instanceof UserPrincipal userPrincipal) {
+            return userPrincipal.getUser();
         }
 
-        authenticationManager.authenticate(new UsernamePasswordAuthenticationToken(userInput, password));
+        // Only reached if some other provider authenticated the user.
+        return userService.findByEmailOrUsername(userInput)
+                .orElseThrow(() -> {
+                    logger.warn("User with inputted email is not found.");
+                    return new UsernameNotFoundException("Credentials not found.");
+                });
     }
 
     @PostMapping("/logout")
     public ResponseEntity<?> logout(HttpServletRequest request) {
         try {
-            ResponseCookie clearCookie = ResponseCookie.from("jwt","")
-                    .httpOnly(true)
-                    .secure(true)
-                    .path("/")
-                    .maxAge(0) // Clear the cookie.
-                    .sameSite("None")
-                    .build();
+            // Ends the refresh token family as well, otherwise the session could simply be renewed.
+            String refreshToken = findCookie(request, REFRESH_COOKIE);
+            if (refreshToken != null) {
+                refreshTokenService.revoke(refreshToken);
+            }
 
             Cookie[] cookies = request.getCookies();
             for (Cookie cookie : cookies) {
@@ -176,7 +371,8 @@ public class AuthController {
 
             logger.info("Successfully logged out.");
             return ResponseEntity.ok()
-                    .header(HttpHeaders.SET_COOKIE, clearCookie.toString())
+                    .header(HttpHeaders.SET_COOKIE, jwtCookie("", 0).toString()) // Clear the cookies.
+                    .header(HttpHeaders.SET_COOKIE, refreshCookie("", 0).toString())
                     .body("Logged out successfully.");
         }
         catch (Exception e) {
@@ -186,4 +382,41 @@ public class AuthController {
         }
     }
 
+    // Revokes every token of the current user, on every device, including the one making the request.
+    // Refresh token families issued until now end with the same watermark.
+    @PostMapping("/logout-all")
+    public ResponseEntity<?> logoutAll(HttpServletRequest request) {
+        try {
+            Cookie[] cookies = request.getCookies();
+            for (Cookie cookie : cookies) {
+                if (cookie.getName().equals("jwt")) {
+                    JWTService.VerifiedToken verifiedToken = jwtService.verifyToken(cookie.getValue());
+                    Long userId = jwtService.extractUserId(verifiedToken);
+                    if (userId == null) {
+                        // Older tokens carry no user id.
+                        userId = userService.findByEmail(verifiedToken.email())
+                                .map(User::getId)
+                                .orElseThrow(() -> new UsernameNotFoundException("Credentials not found."));
+                    }
+
+                    int revoked = sessionService.revokeAllSessions(List.of(userId));
+                    logger.info("Successfully revoked {} sessions for the user.", revoked);
+                    break;
+                }
+            }
+
+            logger.info("Successfully logged out of all sessions.");
+            return ResponseEntity.ok()
+                    .header(HttpHeaders.SET_COOKIE, jwtCookie("", 0).toString()) // Clear the cookies.
+                    .header(HttpHeaders.SET_COOKIE, refreshCookie("", 0).toString())
+                    .body("Logged out of all sessions successfully.");
+        }
+        catch (Exception e) {
+            // Unlike a single logout, the other sessions may still be active, so the client has to know.
+            logger.error("Logout of all sessions error", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Sessions could not be revoked. Please try again later.");
+        }
+    }
+
 }
@@ -0,0 +1,59 @@
+package com.norumai.honkaiwebsitebackend.controller;
+
+import com.norumai.honkaiwebsitebackend.util.JwtKeyManager;
+import io.jsonwebtoken.security.Jwks;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Public keys of every key that may still sign or verify a token, so other services can verify tokens locally.
+@RestController
+public class JwksController {
+
+    private final JwtKeyManager keyManager;
+    private final Duration maxAge;
+    private static final Logger logger = LoggerFactory.getLogger(JwksController.class);
+
+    @Autowired
+    public JwksController(JwtKeyManager keyManager,
+                          @Value("${jwt.keys.jwks-max-age-seconds:300}") long maxAgeSeconds) {
+        this.keyManager = keyManager;
+        // Should not exceed the activation delay, so caches learn a rotated key before it signs anything.
+        this.maxAge = Duration.ofSeconds(maxAgeSeconds);
+    }
+
+    @GetMapping("/.well-known/jwks.json")
+    public ResponseEntity<?> jwks() {
+        try {
+            List<Map<String, Object>> keys = new ArrayList<>();
+            for (JwtKeyManager.ManagedKey key : keyManager.publishedKeys()) {
+                keys.add(new LinkedHashMap<>(Jwks.builder()
+                        .key(key.publicKey())
+                        .id(key.kid())
+                        .algorithm(key.algorithm())
+                        .publicKeyUse("sig")
+                        .build()));
+            }
+
+            return ResponseEntity.ok()
+                    .cacheControl(CacheControl.maxAge(maxAge).cachePublic())
+                    .body(Map.of("keys", keys));
+        }
+        catch (Exception e) {
+            logger.error("Error publishing JWKS.", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Unable to obtain the signing keys.");
+        }
+    }
+}
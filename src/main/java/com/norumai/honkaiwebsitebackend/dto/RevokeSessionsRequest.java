@@ -0,0 +1,15 @@
+package com.norumai.honkaiwebsitebackend.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class RevokeSessionsRequest {
+
+    @Size(max = 1000, message = "Too many users in a single request.")
+    @NotEmpty(message = "At least one user id must be provided.")
+    private List<Long> userIds;
+}
@@ -0,0 +1,7 @@
+package com.norumai.honkaiwebsitebackend.dto;
+
+import java.util.List;
+
+// One page of users, nextCursor is passed as "after" to get the next page and is null on the last one.
+public record UserPage(List<UserSummary> users, Long nextCursor) {
+}
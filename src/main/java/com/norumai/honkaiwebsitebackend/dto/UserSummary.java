@@ -0,0 +1,9 @@
+package com.norumai.honkaiwebsitebackend.dto;
+
+import com.norumai.honkaiwebsitebackend.model.Role;
+
+import java.time.LocalDateTime;
+
+// Read-only view of a user for listings, selected column by column so the password hash is never loaded.
+public record UserSummary(Long id, String username, String email, Role role, String bio, LocalDateTime createdAt) {
+}
@@ -2,13 +2,19 @@ package com.norumai.honkaiwebsitebackend.model;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.persistence.*;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
 
 import java.time.LocalDateTime;
 
 @Entity
 @Data
 @Table(name = "Users")
+@EntityListeners(UserChangeListener.class)
 public class User {
 
     @Id
@@ -35,6 +41,22 @@ public class User {
     @Column(nullable = false, updatable = false)
     private LocalDateTime createdAt;
 
+    // Email as last loaded or saved, so UserChangeListener can also evict the entry of an email that was changed.
+    @Transient
+    @Getter(AccessLevel.PACKAGE)
+    @Setter(AccessLevel.PACKAGE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private String storedEmail;
+
+    // Role as last loaded or saved, a changed role revokes the tokens that still carry the old one.
+    @Transient
+    @Getter(AccessLevel.PACKAGE)
+    @Setter(AccessLevel.PACKAGE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private Role storedRole;
+
     // Create on new account.
     @PrePersist
     protected void onCreate() {
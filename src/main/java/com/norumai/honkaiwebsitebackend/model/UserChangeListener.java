@@ -0,0 +1,94 @@
+package com.norumai.honkaiwebsitebackend.model;
+
+import com.norumai.honkaiwebsitebackend.service.SessionService;
+import com.norumai.honkaiwebsitebackend.util.UserDetailsCache;
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+
+// Any update or removal of a User drops the cached details, whichever code path made the change.
+// A changed role also revokes every session of the user, the signed role claim of older tokens would
+// otherwise be trusted until they expire. jwt.signed-claims.role-version remains for changing every user at once.
+@Component
+public class UserChangeListener {
+
+    private final UserDetailsCache userDetailsCache;
+    private final SessionService sessionService;
+    private static final Logger logger = LoggerFactory.getLogger(UserChangeListener.class);
+
+    @Autowired
+    public UserChangeListener(UserDetailsCache userDetailsCache, SessionService sessionService) {
+        this.userDetailsCache = userDetailsCache;
+        this.sessionService = sessionService;
+    }
+
+    // The cache is keyed by email, the one the row had before an update is needed to evict it.
+    @PostLoad
+    @PostPersist
+    public void onUserStored(User user) {
+        user.setStoredEmail(user.getEmail());
+        user.setStoredRole(user.getRole());
+    }
+
+    @PostUpdate
+    @PostRemove
+    public void onUserChanged(User user) {
+        String email = user.getEmail();
+        String previousEmail = email.equals(user.getStoredEmail()) ? null : user.getStoredEmail();
+        boolean roleChanged = user.getStoredRole() != user.getRole();
+        Long userId = user.getId();
+        user.setStoredEmail(email);
+        user.setStoredRole(user.getRole());
+        logger.debug("User changed, evicting cached details.");
+
+        // Evict after commit, otherwise a concurrent request could cache the old row again.
+        afterCommit(() -> {
+            evict(email, previousEmail);
+            if (roleChanged) {
+                revokeSessions(userId);
+            }
+        });
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        }
+        else {
+            action.run();
+        }
+    }
+
+    private void revokeSessions(Long userId) {
+        try {
+            int revoked = sessionService.revokeAllSessions(List.of(userId));
+            logger.info("Role changed, revoked {} sessions of the user.", revoked);
+        }
+        catch (RuntimeException e) {
+            // The change is already committed, the old tokens stay valid until they expire.
+            logger.error("Role changed, but the sessions of the user could not be revoked", e);
+        }
+    }
+
+    private void evict(String email, String previousEmail) {
+        userDetailsCache.evict(email);
+        if (previousEmail != null) {
+            // Otherwise the old email keeps resolving to this user's principal until its entry expires.
+            userDetailsCache.evict(previousEmail);
+        }
+    }
+}
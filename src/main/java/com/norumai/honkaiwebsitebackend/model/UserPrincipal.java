@@ -0,0 +1,22 @@
+package com.norumai.honkaiwebsitebackend.model;
+
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.Collections;
+
+// UserDetails that keeps the User entity it was loaded from, so login can reuse it instead of querying again.
+public class UserPrincipal extends org.springframework.security.core.userdetails.User {
+
+    private final transient User user;
+
+    public UserPrincipal(User user) {
+        super(user.getEmail(),
+                user.getPassword(),
+                Collections.singleton(new SimpleGrantedAuthority("ROLE_" + user.getRole().name())));
+        this.user = user;
+    }
+
+    public User getUser() {
+        return user;
+    }
+}
@@ -1,13 +1,55 @@
 package com.norumai.honkaiwebsitebackend.repository;
 
+import com.norumai.honkaiwebsitebackend.dto.UserSummary;
 import com.norumai.honkaiwebsitebackend.model.User;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
 
     Optional<User> findByEmail(String email);
     Optional<User> findByUsername(String username);
+
+    // Login accepts either, one query instead of findByEmail followed by findByUsername. Email match wins.
+    @Query("SELECT u FROM User u WHERE u.email = :userInput OR u.username = :userInput " +
+            "ORDER BY CASE WHEN u.email = :userInput THEN 0 ELSE 1 END")
+    List<User> findAllByEmailOrUsername(@Param("userInput") String userInput, Limit limit);
+
+    default Optional<User> findByEmailOrUsername(String userInput) {
+        return findAllByEmailOrUsername(userInput, Limit.of(1)).stream().findFirst();
+    }
+
+    // Keyset pagination, seeks past the last id of the previous page through the primary key
+    // instead of counting off an OFFSET, so every page costs the same.
+    @Query("SELECT new com.norumai.honkaiwebsitebackend.dto.UserSummary(u.id, u.username, u.email, u.role, u.bio, u.createdAt) " +
+            "FROM User u WHERE u.id > :afterId ORDER BY u.id")
+    List<UserSummary> findSummariesAfter(@Param("afterId") long afterId, Limit limit);
+
+    // Rows are fetched from the database in batches while the stream is consumed, it must be closed
+    // within the transaction it was opened in. DTOs are not managed, so nothing piles up in the persistence context.
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT new com.norumai.honkaiwebsitebackend.dto.UserSummary(u.id, u.username, u.email, u.role, u.bio, u.createdAt) " +
+            "FROM User u ORDER BY u.id")
+    Stream<UserSummary> streamAllSummaries();
+
+    // Single UPDATE for password rehashes, nothing cached depends on the password.
+    @Transactional
+    @Modifying
+    @Query("UPDATE User u SET u.password = :password WHERE u.id = :id")
+    int updatePassword(@Param("id") Long id, @Param("password") String password);
 }
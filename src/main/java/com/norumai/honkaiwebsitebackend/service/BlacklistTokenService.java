@@ -1,47 +1,290 @@
 package com.norumai.honkaiwebsitebackend.service;
 
-import io.lettuce.core.api.sync.RedisCommands;
+import com.norumai.honkaiwebsitebackend.util.BlacklistBloomFilter;
+import com.norumai.honkaiwebsitebackend.util.BlacklistNearCache;
+import com.norumai.honkaiwebsitebackend.util.BlacklistUnavailableException;
+import com.norumai.honkaiwebsitebackend.util.RecentRevocations;
+import com.norumai.honkaiwebsitebackend.util.RevocationWatermarks;
+import com.norumai.honkaiwebsitebackend.util.TokenHasher;
+import com.norumai.honkaiwebsitebackend.util.VerifiedTokenCache;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.lettuce.core.SetArgs;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.lettuce.core.cluster.api.sync.RedisClusterCommands;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.math.BigInteger;
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class BlacklistTokenService {
 
-    private final RedisCommands<String, Object> redisCommands;
+    public static final String KEY_PREFIX = "jwt-blacklist:";
+    private static final byte[] KEY_PREFIX_BYTES = TokenHasher.asciiPrefix(KEY_PREFIX);
+    public static final String CIRCUIT_BREAKER = "redisBlacklist";
+    // Per-user "tokens issued before this epoch second are revoked", one key per user however many tokens it covers.
+    public static final String WATERMARK_KEY_PREFIX = "jwt-revoked-before:";
+
+    private final RedisClusterCommands<String, Object> redisCommands;
+    private final RedisClusterAsyncCommands<String, Object> redisAsyncCommands;
+    // Lookups may be served by replicas (redis.read-from), writes and events always go to the primary.
+    private final RedisClusterCommands<String, Object> redisReadCommands;
+    private final RedisClusterAsyncCommands<String, Object> redisReadAsyncCommands;
+    private final BlacklistNearCache nearCache;
+    private final BlacklistBloomFilter bloomFilter;
+    private final VerifiedTokenCache verifiedTokenCache;
+    private final RecentRevocations recentRevocations;
+    private final RevocationWatermarks revocationWatermarks;
+    private final CircuitBreaker circuitBreaker;
+    private final boolean failClosed;
+    private final long lookupTimeoutMillis;
+    // Blacklist entries only need to outlive an access token, watermarks also cover refresh token families.
+    private final long accessTokenTtlSeconds;
+    private final long watermarkTtlSeconds;
+    private final Counter fallbackRevoked;
+    private final Counter fallbackAllowed;
+    private final Counter fallbackRejected;
     private final static Logger logger = LoggerFactory.getLogger(BlacklistTokenService.class);
 
     @Autowired
-    public BlacklistTokenService(RedisCommands<String, Object> redisCommands) {
+    public BlacklistTokenService(RedisClusterCommands<String, Object> redisCommands,
+                                 RedisClusterAsyncCommands<String, Object> redisAsyncCommands,
+                                 @Qualifier("redisReadCommands") RedisClusterCommands<String, Object> redisReadCommands,
+                                 @Qualifier("redisReadAsyncCommands") RedisClusterAsyncCommands<String, Object> redisReadAsyncCommands,
+                                 BlacklistNearCache nearCache, BlacklistBloomFilter bloomFilter,
+                                 VerifiedTokenCache verifiedTokenCache, RecentRevocations recentRevocations,
+                                 RevocationWatermarks revocationWatermarks,
+                                 CircuitBreakerRegistry circuitBreakerRegistry, MeterRegistry meterRegistry,
+                                 @Value("${blacklist.redis-outage-policy:fail-open}") String redisOutagePolicy,
+                                 @Value("${blacklist.lookup-timeout-millis:500}") long lookupTimeoutMillis,
+                                 @Value("${jwt.access-token.ttl-seconds:900}") long accessTokenTtlSeconds,
+                                 @Value("${jwt.refresh-token.ttl-seconds:1209600}") long refreshTokenTtlSeconds) {
         this.redisCommands = redisCommands;
+        this.redisAsyncCommands = redisAsyncCommands;
+        this.redisReadCommands = redisReadCommands;
+        this.redisReadAsyncCommands = redisReadAsyncCommands;
+        this.nearCache = nearCache;
+        this.bloomFilter = bloomFilter;
+        this.verifiedTokenCache = verifiedTokenCache;
+        this.recentRevocations = recentRevocations;
+        this.revocationWatermarks = revocationWatermarks;
+        this.circuitBreaker = circuitBreakerRegistry.circuitBreaker(CIRCUIT_BREAKER);
+        this.failClosed = "fail-closed".equalsIgnoreCase(redisOutagePolicy);
+        this.lookupTimeoutMillis = lookupTimeoutMillis;
+        this.accessTokenTtlSeconds = accessTokenTtlSeconds;
+        this.watermarkTtlSeconds = Math.max(accessTokenTtlSeconds, refreshTokenTtlSeconds);
+        this.fallbackRevoked = Counter.builder("jwt.blacklist.fallbacks").tag("result", "revoked").register(meterRegistry);
+        this.fallbackAllowed = Counter.builder("jwt.blacklist.fallbacks").tag("result", "allowed").register(meterRegistry);
+        this.fallbackRejected = Counter.builder("jwt.blacklist.fallbacks").tag("result", "rejected").register(meterRegistry);
     }
 
     public void blacklistToken(String token, String email) {
         String hashedToken = hashToken(token);
-        String keyName = "jwt-blacklist:" + hashedToken;
+        String keyName = keyName(hashedToken);
         logger.debug("Blacklisting the token of the current user...");
-        redisCommands.setex(keyName, 7200, email); // Expires in 2 hours.
+        // Recorded first, so this node keeps rejecting the token even if Redis cannot be reached.
+        recentRevocations.add(hashedToken);
+        redisCommands.setex(keyName, accessTokenTtlSeconds, email); // Expires with the token.
+
+        // Let every node's near-cache know, including this one.
+        nearCache.markBlacklisted(hashedToken);
+        bloomFilter.add(hashedToken);
+        verifiedTokenCache.evict(hashedToken);
+        // The entry is already stored, the notification does not need to hold up the response.
+        redisAsyncCommands.publish(BlacklistNearCache.CHANNEL, hashedToken);
+    }
+
+    // Revokes many already hashed tokens at once, e.g. every session of a user.
+    // All commands are issued back to back on the shared connection, so they go out as one pipelined batch.
+    public CompletableFuture<Void> blacklistHashedTokensAsync(Collection<String> hashedTokens, String subject) {
+        List<CompletableFuture<?>> writes = new ArrayList<>(hashedTokens.size() * 2);
+        for (String hashedToken : hashedTokens) {
+            recentRevocations.add(hashedToken);
+            nearCache.markBlacklisted(hashedToken);
+            bloomFilter.add(hashedToken);
+            verifiedTokenCache.evict(hashedToken);
+            writes.add(redisAsyncCommands.setex(keyName(hashedToken), accessTokenTtlSeconds, subject).toCompletableFuture());
+            writes.add(redisAsyncCommands.publish(BlacklistNearCache.CHANNEL, hashedToken).toCompletableFuture());
+        }
+        return CompletableFuture.allOf(writes.toArray(new CompletableFuture[0]));
+    }
+
+    // Revokes every token of the user issued before the given second with a single write.
+    // The key outlives every token it covers and then expires on its own.
+    public CompletableFuture<Void> revokeIssuedBeforeAsync(long userId, long epochSeconds) {
+        revocationWatermarks.update(userId, epochSeconds);
+        CompletableFuture<?> stored = redisAsyncCommands
+                .set(WATERMARK_KEY_PREFIX + userId, epochSeconds, SetArgs.Builder.ex(watermarkTtlSeconds))
+                .toCompletableFuture();
+        CompletableFuture<?> published = redisAsyncCommands
+                .publish(RevocationWatermarks.CHANNEL, userId + ":" + epochSeconds)
+                .toCompletableFuture();
+        return CompletableFuture.allOf(stored, published);
+    }
+
+    // Checked after the signature, since the user id and issue time come from the verified claims.
+    public boolean isRevokedByWatermark(Long userId, Date issuedAt) {
+        if (userId == null || issuedAt == null) {
+            return false;
+        }
+        return isRevokedByWatermark(userId, issuedAt.getTime() / 1000);
+    }
+
+    // Shared by access tokens and refresh token families, so both end at the same second.
+    // iat only has second precision, so everything issued within the watermark's second is revoked as well,
+    // a token issued just before the bulk revocation must not slip past it. A login in that same second,
+    // right after the revocation, has to be repeated.
+    public boolean isRevokedByWatermark(long userId, long issuedAtSeconds) {
+        return issuedAtSeconds <= revokedBefore(userId);
+    }
+
+    // Epoch second up to which every token of the user is revoked, 0 when there is none.
+    // Waits at most the lookup timeout, like the blacklist lookup it follows on every request.
+    public long revokedBefore(long userId) {
+        try {
+            return revokedBeforeAsync(userId).join();
+        }
+        catch (CompletionException e) {
+            if (e.getCause() instanceof BlacklistUnavailableException unavailable) {
+                throw unavailable;
+            }
+            throw e;
+        }
+    }
+
+    private CompletableFuture<Long> revokedBeforeAsync(long userId) {
+        Long watermark = revocationWatermarks.lookup(userId);
+        if (watermark != null) {
+            return CompletableFuture.completedFuture(watermark);
+        }
+
+        long generation = revocationWatermarks.generation();
+        return circuitBreaker.executeCompletionStage(() -> redisReadAsyncCommands.get(WATERMARK_KEY_PREFIX + userId)
+                        .toCompletableFuture()
+                        .orTimeout(lookupTimeoutMillis, TimeUnit.MILLISECONDS))
+                .toCompletableFuture()
+                .handle((stored, e) -> {
+                    if (e != null) {
+                        // Fail-open treats the user as never revoked, fail-closed throws.
+                        fallback(null, e);
+                        return 0L;
+                    }
+                    long lookedUp = stored instanceof Number number ? number.longValue() : 0L;
+                    revocationWatermarks.putLookupResult(userId, lookedUp, generation);
+                    return lookedUp;
+                });
     }
 
     private String hashToken(String token) {
+        return TokenHasher.hash(token);
+    }
+
+    private static String keyName(String hashedToken) {
+        return TokenHasher.prefixed(KEY_PREFIX_BYTES, hashedToken);
+    }
+
+    public boolean isTokenBlacklisted(String token) {
+        return isHashedTokenBlacklisted(hashToken(token));
+    }
+
+    public boolean isHashedTokenBlacklisted(String hashedToken) {
+        boolean filtered = bloomFilter.isReady();
+        Boolean local = lookupLocally(hashedToken, filtered);
+        if (local != null) {
+            return local;
+        }
+
+        // Cold start or after an invalidation, ask Redis and remember the answer.
+        long generation = nearCache.generation();
+        boolean blacklisted;
         try {
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            byte[] hash = md.digest(token.getBytes(StandardCharsets.UTF_8));
-            return new BigInteger(1, hash).toString(16);
+            blacklisted = circuitBreaker.executeSupplier(() -> redisReadCommands.exists(keyName(hashedToken)) == 1);
         }
         catch (Exception e) {
-            throw new RuntimeException("Error while hashing token.", e);
+            return fallback(hashedToken, e);
         }
+        return recordLookupResult(hashedToken, blacklisted, generation, filtered);
     }
 
-    public boolean isTokenBlacklisted(String token) {
-        String hashedToken = hashToken(token);
-        String keyName = "jwt-blacklist:" + hashedToken;
-        return redisCommands.exists(keyName) == 1;
+    // Same check without parking the calling thread on Redis, so the caller can verify the JWT in the meantime.
+    public CompletableFuture<Boolean> isTokenBlacklistedAsync(String token) {
+        return isHashedTokenBlacklistedAsync(hashToken(token));
+    }
+
+    // For callers that already hashed the token, so it is only hashed once per request.
+    public CompletableFuture<Boolean> isHashedTokenBlacklistedAsync(String hashedToken) {
+        boolean filtered = bloomFilter.isReady();
+        Boolean local = lookupLocally(hashedToken, filtered);
+        if (local != null) {
+            return CompletableFuture.completedFuture(local);
+        }
+
+        // A hung Redis gives up after the lookup timeout instead of redis.timeout, and counts as a failure.
+        long generation = nearCache.generation();
+        return circuitBreaker.executeCompletionStage(() -> redisReadAsyncCommands.exists(keyName(hashedToken))
+                        .toCompletableFuture()
+                        .orTimeout(lookupTimeoutMillis, TimeUnit.MILLISECONDS))
+                .toCompletableFuture()
+                .handle((count, e) -> e == null
+                        ? recordLookupResult(hashedToken, count == 1, generation, filtered)
+                        : fallback(hashedToken, e));
+    }
+
+    // Redis failed or the circuit is open. Recently revoked tokens are still known locally (when one is given),
+    // everything else is allowed (fail-open) or rejected as unverifiable (fail-closed).
+    private boolean fallback(String hashedToken, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (hashedToken != null && recentRevocations.contains(hashedToken)) {
+            fallbackRevoked.increment();
+            return true;
+        }
+
+        if (cause instanceof CallNotPermittedException) {
+            logger.debug("Blacklist circuit is open, answering locally.");
+        }
+        else {
+            logger.warn("Blacklist lookup failed, answering locally: {}", cause.toString());
+        }
+
+        if (failClosed) {
+            fallbackRejected.increment();
+            // Clients retry once the breaker is due to probe Redis again.
+            long retryAfterMillis = circuitBreaker.getCircuitBreakerConfig().getWaitIntervalFunctionInOpenState().apply(1);
+            throw new BlacklistUnavailableException(Math.max(1, TimeUnit.MILLISECONDS.toSeconds(retryAfterMillis)), cause);
+        }
+        fallbackAllowed.increment();
+        return false;
+    }
+
+    // Answers from the Bloom filter or the near-cache, null when Redis has to be asked.
+    private Boolean lookupLocally(String hashedToken, boolean filtered) {
+        // Tokens the filter has never seen are not blacklisted, no need to ask anyone else.
+        if (filtered && !bloomFilter.mightContain(hashedToken)) {
+            return false;
+        }
+
+        return nearCache.lookup(hashedToken);
+    }
+
+    private boolean recordLookupResult(String hashedToken, boolean blacklisted, long generation, boolean filtered) {
+        nearCache.putLookupResult(hashedToken, blacklisted, generation);
+        if (filtered && !blacklisted) {
+            bloomFilter.recordFalsePositive();
+        }
+        return blacklisted;
     }
 }
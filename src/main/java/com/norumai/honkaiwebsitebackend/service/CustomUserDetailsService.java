@@ -2,11 +2,15 @@ package com.norumai.honkaiwebsitebackend.service;
 
 import com.norumai.honkaiwebsitebackend.repository.UserRepository;
 import com.norumai.honkaiwebsitebackend.model.User;
+import com.norumai.honkaiwebsitebackend.model.UserPrincipal;
+import com.norumai.honkaiwebsitebackend.util.ReplicaReads;
+import com.norumai.honkaiwebsitebackend.util.UserDetailsCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
@@ -14,14 +18,19 @@ import org.springframework.stereotype.Service;
 import java.util.Collections;
 
 @Service
-public class CustomUserDetailsService implements UserDetailsService {
+public class CustomUserDetailsService implements UserDetailsService, UserDetailsPasswordService {
 
     private final UserRepository userRepository;
+    private final UserDetailsCache userDetailsCache;
+    private final ReplicaReads replicaReads;
     private static final Logger logger = LoggerFactory.getLogger(CustomUserDetailsService.class);
 
     @Autowired
-    public CustomUserDetailsService(UserRepository userRepository) {
+    public CustomUserDetailsService(UserRepository userRepository, UserDetailsCache userDetailsCache,
+                                    ReplicaReads replicaReads) {
         this.userRepository = userRepository;
+        this.userDetailsCache = userDetailsCache;
+        this.replicaReads = replicaReads;
     }
 
     // UserDetails is overrided to use User's email information.
@@ -30,23 +39,56 @@ public class CustomUserDetailsService implements UserDetailsService {
         logger.debug("Attempting to load current inputted user details...");
 
         try {
-            User user = userRepository.findByEmail(loginInput)
-                    .or(() -> userRepository.findByUsername(loginInput))
+            User user = replicaReads.find(loginInput, () -> userRepository.findByEmailOrUsername(loginInput))
                     .orElseThrow(() -> {
                         logger.warn("Custom User Service - Invalid Credentials.");
                         return new UsernameNotFoundException("Invalid Credentials.");
                     });
 
             logger.info("User details loaded successfully for: {}.", loginInput);
-            return new org.springframework.security.core.userdetails.User(
-                    user.getEmail(),
-                    user.getPassword(),
-                    Collections.singleton(new SimpleGrantedAuthority("ROLE_" + user.getRole().name()))
-            );
+            // Entity travels with the principal, so the caller does not need to load it again.
+            return new UserPrincipal(user);
         }
         catch (Exception e) {
             logger.error("Custom User Service - Unexpected error loading user.\n", e);
             throw new UsernameNotFoundException("Error has occurred loading user.");
         }
     }
+
+    // Used by JwtFilter for already verified tokens, whose subject is always the email.
+    // Served from UserDetailsCache when possible, the password is not needed and never loaded into the cache.
+    public UserDetails loadUserByEmail(String email) throws UsernameNotFoundException {
+        String role = userDetailsCache.getRole(email);
+
+        if (role == null) {
+            logger.debug("User details not cached, loading from database...");
+            User user = replicaReads.find(email, () -> userRepository.findByEmail(email))
+                    .orElseThrow(() -> {
+                        logger.warn("Custom User Service - Token user no longer exists.");
+                        return new UsernameNotFoundException("Invalid Credentials.");
+                    });
+            role = user.getRole().name();
+            userDetailsCache.put(email, role);
+        }
+
+        return new org.springframework.security.core.userdetails.User(
+                email,
+                "",
+                Collections.singleton(new SimpleGrantedAuthority("ROLE_" + role))
+        );
+    }
+
+    // Called by DaoAuthenticationProvider after a successful login whose hash is outdated (older format or lower strength).
+    @Override
+    public UserDetails updatePassword(UserDetails userDetails, String newPassword) {
+        User user = userDetails instanceof UserPrincipal userPrincipal
+                ? userPrincipal.getUser()
+                : userRepository.findByEmail(userDetails.getUsername())
+                        .orElseThrow(() -> new UsernameNotFoundException("Invalid Credentials."));
+
+        userRepository.updatePassword(user.getId(), newPassword);
+        user.setPassword(newPassword);
+        logger.info("Password hash upgraded for: {}.", user.getUsername());
+        return new UserPrincipal(user);
+    }
 }
@@ -1,26 +1,86 @@
 package com.norumai.honkaiwebsitebackend.service;
 
+import com.norumai.honkaiwebsitebackend.util.JwtKeyManager;
+import com.norumai.honkaiwebsitebackend.util.TokenHasher;
+import com.norumai.honkaiwebsitebackend.util.VerifiedTokenCache;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.LocatorAdapter;
+import io.jsonwebtoken.ProtectedHeader;
 import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
 import com.norumai.honkaiwebsitebackend.model.User;
 
-import javax.crypto.SecretKey;
+import java.security.Key;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.function.Function;
 
 @Service
 public class JWTService {
 
     private static final Logger logger = LoggerFactory.getLogger(JWTService.class);
-    // Build secret key signature with HS256 hashing algorithm.
-    private final SecretKey key = Jwts.SIG.HS256.key().build();
+    private final JwtKeyManager keyManager;
+    // Parsers are immutable and thread-safe, build once instead of per token.
+    // The verification key is picked by the kid in the token header, so tokens from any node and any
+    // not yet retired key are accepted.
+    private final JwtParser parser;
+    private final VerifiedTokenCache verifiedTokenCache;
+    private final boolean signedClaimsEnabled;
+    private final int roleVersion;
+    private final long accessTokenTtlSeconds;
+
+    // Identity claims embedded into every token, so requests can be authenticated without the database.
+    public static final String USER_ID_CLAIM = "uid";
+    public static final String USERNAME_CLAIM = "username";
+    public static final String ROLE_CLAIM = "role";
+    public static final String ROLE_VERSION_CLAIM = "rv";
+
+    // Claims of a token whose signature has already been verified.
+    public record VerifiedToken(String email, Date expiration, Claims claims) {
+
+        public boolean isExpired() {
+            return expiration != null && expiration.before(new Date());
+        }
+
+        public Date issuedAt() {
+            return claims != null ? claims.getIssuedAt() : null;
+        }
+    }
+
+    @Autowired
+    public JWTService(JwtKeyManager keyManager,
+                      VerifiedTokenCache verifiedTokenCache,
+                      @Value("${jwt.signed-claims.enabled:false}") boolean signedClaimsEnabled,
+                      @Value("${jwt.signed-claims.role-version:1}") int roleVersion,
+                      @Value("${jwt.access-token.ttl-seconds:900}") long accessTokenTtlSeconds) {
+        this.keyManager = keyManager;
+        this.parser = Jwts.parser()
+                .keyLocator(new LocatorAdapter<Key>() {
+                    @Override
+                    protected Key locate(ProtectedHeader header) {
+                        return keyManager.verificationKey(header.getKeyId());
+                    }
+                })
+                .build();
+        this.verifiedTokenCache = verifiedTokenCache;
+        this.signedClaimsEnabled = signedClaimsEnabled;
+        this.roleVersion = roleVersion;
+        this.accessTokenTtlSeconds = accessTokenTtlSeconds;
+    }
+
+    // Short-lived, clients get a new one from their refresh token instead of logging in again.
+    public long getAccessTokenTtlSeconds() {
+        return accessTokenTtlSeconds;
+    }
 
     @PostConstruct
     public void init() {
@@ -30,71 +90,116 @@ public class JWTService {
     public String generateToken(User user) {
         logger.debug("Generating token for: {}.", user.getUsername());
         Map<String, Object> claims = new HashMap<>();
+        claims.put(USER_ID_CLAIM, user.getId());
+        claims.put(USERNAME_CLAIM, user.getUsername());
+        claims.put(ROLE_CLAIM, user.getRole() != null ? user.getRole().name() : null);
+        claims.put(ROLE_VERSION_CLAIM, roleVersion);
         return createToken(claims, user.getEmail());
     }
 
     private String createToken(Map<String, Object> claims, String userSubject) {
         Date issuedAt = new Date(System.currentTimeMillis());
-        Date expiration = new Date(System.currentTimeMillis() + 1000 * 60 * 60 * 2);
+        Date expiration = new Date(issuedAt.getTime() + accessTokenTtlSeconds * 1000);
         logger.debug("Creating token for {} with expiration date of {}.", userSubject, expiration);
 
+        // Algorithm follows the key, EdDSA or ES256.
+        JwtKeyManager.ManagedKey signingKey = keyManager.signingKey();
         return Jwts.builder()
+                .header().keyId(signingKey.kid()).and()
                 .claims(claims)
                 .subject(userSubject)
                 .issuedAt(issuedAt)
-                .expiration(expiration) // 2 hours
-                .signWith(key)
+                .expiration(expiration)
+                .signWith(signingKey.privateKey())
                 .compact();
     }
 
-    public String extractEmail(String token) {
-        return extractClaim(token, Claims::getSubject);
+    // Verifies the signature once, the result is carried through the rest of the request.
+    // Tokens seen before are served from the cache until they expire or get blacklisted.
+    public VerifiedToken verifyToken(String token) {
+        return verifyToken(token, TokenHasher.hash(token));
     }
 
-    public <T> T extractClaim(String token, Function<Claims, T> claimsResolver) {
-        final Claims claims = extractAllClaims(token);
-        return claimsResolver.apply(claims);
+    public VerifiedToken verifyToken(String token, String hashedToken) {
+        VerifiedToken cached = verifiedTokenCache.get(hashedToken);
+        if (cached != null) {
+            return cached;
+        }
+
+        Claims claims = extractAllClaims(token);
+        VerifiedToken verifiedToken = new VerifiedToken(claims.getSubject(), claims.getExpiration(), claims);
+        verifiedTokenCache.put(hashedToken, verifiedToken);
+        return verifiedToken;
     }
 
-    private Claims extractAllClaims(String token) {
-        return Jwts.parser()
-                .verifyWith(key)
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
+    // Builds the principal straight from the signed claims, without touching the database.
+    // Returns null when signed claims are disabled, missing (older tokens) or issued under an older role version,
+    // in which case the caller should load the user instead.
+    public UserDetails extractUserDetails(VerifiedToken verifiedToken) {
+        if (!signedClaimsEnabled || verifiedToken.claims() == null) {
+            return null;
+        }
+
+        Claims claims = verifiedToken.claims();
+        String role = claims.get(ROLE_CLAIM, String.class);
+        Integer tokenRoleVersion = claims.get(ROLE_VERSION_CLAIM, Integer.class);
+        if (verifiedToken.email() == null || role == null || tokenRoleVersion == null || tokenRoleVersion < roleVersion) {
+            logger.debug("Token has no usable signed claims, user will be loaded.");
+            return null;
+        }
+
+        return new org.springframework.security.core.userdetails.User(
+                verifiedToken.email(),
+                "",
+                Collections.singleton(new SimpleGrantedAuthority("ROLE_" + role))
+        );
+    }
+
+    // Null for tokens without the user id claim, the caller can look the user up by email instead.
+    public Long extractUserId(VerifiedToken verifiedToken) {
+        if (verifiedToken.claims() == null) {
+            return null;
+        }
+        Number userId = verifiedToken.claims().get(USER_ID_CLAIM, Number.class);
+        return userId != null ? userId.longValue() : null;
     }
 
-    private boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
+    public String extractEmail(String token) {
+        return verifyToken(token).email();
     }
 
-    private Date extractExpiration(String token) {
-        return extractClaim(token, Claims::getExpiration);
+    private Claims extractAllClaims(String token) {
+        return parser
+                .parseSignedClaims(token)
+                .getPayload();
     }
 
     public boolean validateToken(String token, UserDetails userDetails) {
-        // CustomUserDetailsService is set to use Email in UserDetails' username.
-        // Token is validated from their email.
         try {
-            final String email = extractEmail(token);
-
-
-            if (!email.equals(userDetails.getUsername())) {
-                logger.warn("Token validation failed");
-                return false;
-            }
-
-            if (isTokenExpired(token)) {
-                logger.warn("Token expired");
-                return false;
-            }
-
-            logger.info("Token successfully validated");
-            return (email.equals(userDetails.getUsername()) && !isTokenExpired(token));
+            return validateToken(verifyToken(token), userDetails);
         }
         catch (Exception e) {
             logger.error("Error during token validation", e);
             return false;
         }
     }
+
+    public boolean validateToken(VerifiedToken verifiedToken, UserDetails userDetails) {
+        // CustomUserDetailsService is set to use Email in UserDetails' username.
+        // Token is validated from their email.
+        final String email = verifiedToken.email();
+
+        if (email == null || !email.equals(userDetails.getUsername())) {
+            logger.warn("Token validation failed");
+            return false;
+        }
+
+        if (verifiedToken.isExpired()) {
+            logger.warn("Token expired");
+            return false;
+        }
+
+        logger.debug("Token successfully validated");
+        return true;
+    }
 }
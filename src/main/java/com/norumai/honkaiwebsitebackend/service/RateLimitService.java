@@ -0,0 +1,259 @@
+package com.norumai.honkaiwebsitebackend.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.norumai.honkaiwebsitebackend.util.TokenHasher;
+import io.lettuce.core.RedisNoScriptException;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Throttles authentication attempts per client address and per account, in two layers:
+// a local token bucket absorbs bursts on this node without any I/O, and a sliding window in Redis
+// enforces the limit across all nodes. Rejections are remembered locally until the window frees up,
+// so an ongoing attack is turned away from memory. Redis being slow or down never blocks a login.
+@Service
+public class RateLimitService {
+
+    public static final String KEY_PREFIX = "rate-limit:";
+
+    // KEYS[1] limit state, ARGV limit, window millis. Approximates a sliding window from the counts of the
+    // current and previous fixed window, weighted by how much of the previous one still overlaps.
+    // Uses the Redis clock so every node agrees on the window. Returns {1, 0} when allowed,
+    // {0, millis until the current window ends} otherwise.
+    private static final String SLIDING_WINDOW_SCRIPT = """
+            local time = redis.call('TIME')
+            local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+            local window = tonumber(ARGV[2])
+            local current = math.floor(now / window)
+            local state = redis.call('HMGET', KEYS[1], 'window', 'current', 'previous')
+            local count = tonumber(state[2]) or 0
+            local previous = tonumber(state[3]) or 0
+            if tonumber(state[1]) ~= current then
+                previous = tonumber(state[1]) == current - 1 and count or 0
+                count = 0
+            end
+            local remaining = window - now % window
+            if previous * remaining / window + count >= tonumber(ARGV[1]) then
+                return {0, remaining}
+            end
+            redis.call('HSET', KEYS[1], 'window', current, 'current', count + 1, 'previous', previous)
+            redis.call('PEXPIRE', KEYS[1], window * 2)
+            return {1, 0}
+            """;
+
+    private final RedisClusterAsyncCommands<String, String> redisAsyncCommands;
+    private final boolean enabled;
+    private final long windowMillis;
+    private final long redisTimeoutMillis;
+    private final String slidingWindowScriptSha;
+    private final Map<Scope, ScopeLimit> limits = new EnumMap<>(Scope.class);
+    private final Counter redisErrors;
+    private final static Logger logger = LoggerFactory.getLogger(RateLimitService.class);
+
+    public enum Scope {
+        IP,
+        USERNAME
+    }
+
+    public record Decision(boolean allowed, long retryAfterSeconds) {
+        public static final Decision ALLOWED = new Decision(true, 0);
+
+        private static Decision rejected(long retryAfterMillis) {
+            return new Decision(false, Math.max(1, (retryAfterMillis + 999) / 1000));
+        }
+    }
+
+    @Autowired
+    public RateLimitService(RedisClusterAsyncCommands<String, String> redisAsyncCommands,
+                            MeterRegistry meterRegistry,
+                            @Value("${rate-limit.enabled:true}") boolean enabled,
+                            @Value("${rate-limit.window-seconds:60}") long windowSeconds,
+                            @Value("${rate-limit.redis-timeout-millis:50}") long redisTimeoutMillis,
+                            @Value("${rate-limit.local.maximum-size:100000}") long maximumSize,
+                            @Value("${rate-limit.ip.burst:20}") int ipBurst,
+                            @Value("${rate-limit.ip.per-window:60}") int ipPerWindow,
+                            @Value("${rate-limit.username.burst:5}") int usernameBurst,
+                            @Value("${rate-limit.username.per-window:10}") int usernamePerWindow) {
+        this.redisAsyncCommands = redisAsyncCommands;
+        this.enabled = enabled;
+        this.windowMillis = windowSeconds * 1000;
+        this.redisTimeoutMillis = redisTimeoutMillis;
+        this.slidingWindowScriptSha = redisAsyncCommands.digest(SLIDING_WINDOW_SCRIPT);
+        this.redisErrors = Counter.builder("rate.limit.redis.errors").register(meterRegistry);
+        Duration window = Duration.ofSeconds(windowSeconds);
+        limits.put(Scope.IP, new ScopeLimit(Scope.IP, ipBurst, ipPerWindow, window, maximumSize, meterRegistry));
+        limits.put(Scope.USERNAME,
+                new ScopeLimit(Scope.USERNAME, usernameBurst, usernamePerWindow, window, maximumSize, meterRegistry));
+    }
+
+    // Counts one attempt for the identity and says whether it may go ahead.
+    public Decision tryAcquire(Scope scope, String identity) {
+        if (!enabled || identity == null || identity.isBlank()) {
+            return Decision.ALLOWED;
+        }
+
+        long start = System.nanoTime();
+        ScopeLimit limit = limits.get(scope);
+        String key = limit.key(identity);
+
+        Decision decision = limit.tryAcquireLocally(key);
+        if (decision != null) {
+            limit.memoryDecisions.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return decision;
+        }
+
+        decision = tryAcquireGlobally(limit, key);
+        limit.redisDecisions.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return decision;
+    }
+
+    private Decision tryAcquireGlobally(ScopeLimit limit, String key) {
+        List<Object> result;
+        try {
+            result = evalSlidingWindow(KEY_PREFIX + key, String.valueOf(limit.perWindow), String.valueOf(windowMillis));
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Decision.ALLOWED;
+        }
+        catch (Exception e) {
+            // Fail open, the local buckets still cap what a single node lets through.
+            redisErrors.increment();
+            logger.warn("Global rate limit unavailable, using the local limit only: {}", e.toString());
+            return Decision.ALLOWED;
+        }
+
+        if ((Long) result.get(0) == 1) {
+            return Decision.ALLOWED;
+        }
+
+        long retryAfterMillis = (Long) result.get(1);
+        limit.blockedUntil.put(key, System.currentTimeMillis() + retryAfterMillis);
+        limit.rejectedGlobally.increment();
+        return Decision.rejected(retryAfterMillis);
+    }
+
+    // EVALSHA first, the script body is only sent again after Redis lost its script cache.
+    private List<Object> evalSlidingWindow(String keyName, String... args)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        String[] keys = { keyName };
+        try {
+            return redisAsyncCommands.<List<Object>>evalsha(slidingWindowScriptSha, ScriptOutputType.MULTI, keys, args)
+                    .get(redisTimeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        catch (ExecutionException e) {
+            if (!(e.getCause() instanceof RedisNoScriptException)) {
+                throw e;
+            }
+            return redisAsyncCommands.<List<Object>>eval(SLIDING_WINDOW_SCRIPT, ScriptOutputType.MULTI, keys, args)
+                    .get(redisTimeoutMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Limits and local state of one scope.
+    private static final class ScopeLimit {
+
+        private final String prefix;
+        private final boolean hashIdentity;
+        private final int burst;
+        private final int perWindow;
+        private final double tokensPerNano;
+        private final Cache<String, TokenBucket> buckets;
+        private final Cache<String, Long> blockedUntil;
+        private final Counter rejectedLocally;
+        private final Counter rejectedGlobally;
+        private final Timer memoryDecisions;
+        private final Timer redisDecisions;
+
+        private ScopeLimit(Scope scope, int burst, int perWindow, Duration window, long maximumSize,
+                           MeterRegistry meterRegistry) {
+            String name = scope.name().toLowerCase(Locale.ROOT);
+            this.prefix = name + ":";
+            // Usernames and emails are user input of any length, only a fixed size hash is kept.
+            this.hashIdentity = scope == Scope.USERNAME;
+            this.burst = burst;
+            this.perWindow = perWindow;
+            // Each node refills at the global rate, the Redis window keeps the sum of all nodes in check.
+            Duration refillInterval = window.dividedBy(Math.max(1, perWindow));
+            this.tokensPerNano = 1.0 / refillInterval.toNanos();
+            // An idle bucket is full again after this long, the same as a new one.
+            this.buckets = Caffeine.newBuilder()
+                    .maximumSize(maximumSize)
+                    .expireAfterAccess(refillInterval.multipliedBy(Math.max(1, burst)))
+                    .build();
+            this.blockedUntil = Caffeine.newBuilder()
+                    .maximumSize(maximumSize)
+                    .expireAfterWrite(window)
+                    .build();
+            this.rejectedLocally = Counter.builder("rate.limit.rejected").tag("scope", name).tag("source", "local")
+                    .register(meterRegistry);
+            this.rejectedGlobally = Counter.builder("rate.limit.rejected").tag("scope", name).tag("source", "global")
+                    .register(meterRegistry);
+            this.memoryDecisions = Timer.builder("rate.limit.decision").tag("scope", name).tag("source", "memory")
+                    .register(meterRegistry);
+            this.redisDecisions = Timer.builder("rate.limit.decision").tag("scope", name).tag("source", "redis")
+                    .register(meterRegistry);
+        }
+
+        private String key(String identity) {
+            String normalized = identity.trim().toLowerCase(Locale.ROOT);
+            return prefix + (hashIdentity ? TokenHasher.hash(normalized) : normalized);
+        }
+
+        // Null when this node has no objection and Redis has to be asked.
+        private Decision tryAcquireLocally(String key) {
+            long now = System.currentTimeMillis();
+            Long blocked = blockedUntil.getIfPresent(key);
+            if (blocked != null && blocked > now) {
+                rejectedGlobally.increment();
+                return Decision.rejected(blocked - now);
+            }
+
+            long waitNanos = buckets.get(key, k -> new TokenBucket(burst)).tryConsume(tokensPerNano, burst);
+            if (waitNanos > 0) {
+                rejectedLocally.increment();
+                return Decision.rejected(TimeUnit.NANOSECONDS.toMillis(waitNanos));
+            }
+            return null;
+        }
+    }
+
+    private static final class TokenBucket {
+
+        private double tokens;
+        private long refilledAt = System.nanoTime();
+
+        private TokenBucket(int capacity) {
+            this.tokens = capacity;
+        }
+
+        // Takes a token and returns 0, or the nanos until the next token when the bucket is empty.
+        private synchronized long tryConsume(double tokensPerNano, int capacity) {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - refilledAt) * tokensPerNano);
+            refilledAt = now;
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            return (long) Math.ceil((1 - tokens) / tokensPerNano);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.norumai.honkaiwebsitebackend.service;
+
+import com.norumai.honkaiwebsitebackend.model.Role;
+import com.norumai.honkaiwebsitebackend.model.User;
+import com.norumai.honkaiwebsitebackend.util.TokenHasher;
+import io.lettuce.core.RedisNoScriptException;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import io.lettuce.core.cluster.api.sync.RedisClusterCommands;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+// Rotating refresh tokens, grouped into one family per login. Only the hash of the newest token of a family is kept,
+// presenting an older one means it was copied, and the whole family is revoked.
+// A family carries the identity claims, so access tokens are minted again without a password check or MySQL.
+// Role changes should go along with a session revocation, which also ends every family issued before it.
+@Service
+public class RefreshTokenService {
+
+    public static final String KEY_PREFIX = "jwt-refresh:";
+
+    // KEYS[1] family, ARGV presented hash, new hash, ttl seconds, now millis, grace millis.
+    // Returns {1, uid, email, username, role, created} when rotated, {2} for the token just replaced within
+    // the grace window (a concurrent refresh), {-1} on reuse and {0} for an unknown or expired family.
+    private static final String ROTATE_SCRIPT = """
+            local family = redis.call('HMGET', KEYS[1], 'current', 'previous', 'rotated')
+            if not family[1] then
+                return {0}
+            end
+            if family[1] ~= ARGV[1] then
+                if family[2] == ARGV[1] and tonumber(ARGV[4]) - tonumber(family[3]) <= tonumber(ARGV[5]) then
+                    return {2}
+                end
+                redis.call('DEL', KEYS[1])
+                return {-1}
+            end
+            redis.call('HSET', KEYS[1], 'current', ARGV[2], 'previous', ARGV[1], 'rotated', ARGV[4])
+            redis.call('EXPIRE', KEYS[1], ARGV[3])
+            return {1, unpack(redis.call('HMGET', KEYS[1], 'uid', 'email', 'username', 'role', 'created'))}
+            """;
+
+    private final RedisClusterCommands<String, String> redisCommands;
+    private final RedisClusterAsyncCommands<String, String> redisAsyncCommands;
+    private final BlacklistTokenService blacklistTokenService;
+    private final long ttlSeconds;
+    private final long reuseGraceMillis;
+    private final SecureRandom secureRandom = new SecureRandom();
+    private final String rotateScriptSha;
+    private final Counter rotated;
+    private final Counter reused;
+    private final Counter rejected;
+    private final static Logger logger = LoggerFactory.getLogger(RefreshTokenService.class);
+
+    public enum Status {
+        ROTATED,
+        // The previous token of the family, presented again right after it was rotated, e.g. by a second tab.
+        CONCURRENT,
+        REUSED,
+        EXPIRED,
+        REVOKED
+    }
+
+    // User only holds the identity claims from the family, it is never saved.
+    public record Rotation(Status status, String refreshToken, User user) {
+    }
+
+    @Autowired
+    public RefreshTokenService(RedisClusterCommands<String, String> redisCommands,
+                               RedisClusterAsyncCommands<String, String> redisAsyncCommands,
+                               BlacklistTokenService blacklistTokenService,
+                               MeterRegistry meterRegistry,
+                               @Value("${jwt.refresh-token.ttl-seconds:1209600}") long ttlSeconds,
+                               @Value("${jwt.refresh-token.reuse-grace-seconds:10}") long reuseGraceSeconds) {
+        this.redisCommands = redisCommands;
+        this.redisAsyncCommands = redisAsyncCommands;
+        this.blacklistTokenService = blacklistTokenService;
+        this.ttlSeconds = ttlSeconds;
+        this.reuseGraceMillis = reuseGraceSeconds * 1000;
+        this.rotateScriptSha = redisCommands.digest(ROTATE_SCRIPT);
+        this.rotated = Counter.builder("jwt.refresh").tag("result", "rotated").register(meterRegistry);
+        this.reused = Counter.builder("jwt.refresh").tag("result", "reused").register(meterRegistry);
+        this.rejected = Counter.builder("jwt.refresh").tag("result", "rejected").register(meterRegistry);
+    }
+
+    public long getTtlSeconds() {
+        return ttlSeconds;
+    }
+
+    private static String keyName(String familyId) {
+        return KEY_PREFIX + familyId;
+    }
+
+    // "{familyId}.{secret}", the family id is only used to find the family, the secret is what gets checked.
+    private String randomToken(String familyId) {
+        return familyId + "." + randomId(32);
+    }
+
+    private String randomId(int bytes) {
+        byte[] random = new byte[bytes];
+        secureRandom.nextBytes(random);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(random);
+    }
+
+    // Starts a new family on login.
+    public String issue(User user) {
+        String familyId = randomId(16);
+        String refreshToken = randomToken(familyId);
+
+        Map<String, String> family = new HashMap<>();
+        family.put("current", TokenHasher.hash(refreshToken));
+        family.put("uid", String.valueOf(user.getId()));
+        family.put("email", user.getEmail());
+        family.put("username", user.getUsername());
+        family.put("role", user.getRole() != null ? user.getRole().name() : Role.USER.name());
+        family.put("created", String.valueOf(System.currentTimeMillis()));
+
+        String keyName = keyName(familyId);
+        CompletableFuture.allOf(
+                redisAsyncCommands.hset(keyName, family).toCompletableFuture(),
+                redisAsyncCommands.expire(keyName, ttlSeconds).toCompletableFuture()
+        ).join();
+        logger.debug("Issued a new refresh token family.");
+        return refreshToken;
+    }
+
+    // Swaps the presented token for a new one in a single atomic step.
+    public Rotation rotate(String refreshToken) {
+        String familyId = familyId(refreshToken);
+        if (familyId == null) {
+            rejected.increment();
+            return new Rotation(Status.EXPIRED, null, null);
+        }
+
+        String newRefreshToken = randomToken(familyId);
+        List<Object> result = evalRotate(keyName(familyId), TokenHasher.hash(refreshToken),
+                TokenHasher.hash(newRefreshToken), String.valueOf(ttlSeconds),
+                String.valueOf(System.currentTimeMillis()), String.valueOf(reuseGraceMillis));
+
+        long status = (Long) result.get(0);
+        if (status == -1) {
+            reused.increment();
+            logger.warn("Refresh token reuse detected, the token family has been revoked.");
+            return new Rotation(Status.REUSED, null, null);
+        }
+        if (status != 1) {
+            rejected.increment();
+            return new Rotation(status == 2 ? Status.CONCURRENT : Status.EXPIRED, null, null);
+        }
+
+        User user = new User();
+        user.setId(Long.valueOf((String) result.get(1)));
+        user.setEmail((String) result.get(2));
+        user.setUsername((String) result.get(3));
+        user.setRole(Role.valueOf((String) result.get(4)));
+
+        // Families started no later than the user's last "log out all sessions" are over as well.
+        long createdSeconds = Long.parseLong((String) result.get(5)) / 1000;
+        if (blacklistTokenService.isRevokedByWatermark(user.getId(), createdSeconds)) {
+            redisCommands.del(keyName(familyId));
+            rejected.increment();
+            return new Rotation(Status.REVOKED, null, null);
+        }
+
+        rotated.increment();
+        return new Rotation(Status.ROTATED, newRefreshToken, user);
+    }
+
+    // Ends the family of the given token, e.g. on logout.
+    public void revoke(String refreshToken) {
+        String familyId = familyId(refreshToken);
+        if (familyId != null) {
+            redisCommands.del(keyName(familyId));
+        }
+    }
+
+    private static String familyId(String refreshToken) {
+        int separator = refreshToken == null ? -1 : refreshToken.indexOf('.');
+        return separator > 0 ? refreshToken.substring(0, separator) : null;
+    }
+
+    // EVALSHA first, the script body is only sent again after Redis lost its script cache (e.g. restart or failover).
+    private List<Object> evalRotate(String keyName, String... args) {
+        String[] keys = { keyName };
+        try {
+            return redisCommands.evalsha(rotateScriptSha, ScriptOutputType.MULTI, keys, args);
+        }
+        catch (RedisNoScriptException e) {
+            return redisCommands.eval(ROTATE_SCRIPT, ScriptOutputType.MULTI, keys, args);
+        }
+    }
+}
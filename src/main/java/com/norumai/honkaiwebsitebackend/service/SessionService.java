@@ -0,0 +1,101 @@
+package com.norumai.honkaiwebsitebackend.service;
+
+import com.norumai.honkaiwebsitebackend.model.User;
+import com.norumai.honkaiwebsitebackend.util.TokenHasher;
+import io.lettuce.core.Range;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.cluster.api.async.RedisClusterAsyncCommands;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+// Tracks the live tokens of every user in a sorted set (hashed token scored by its expiration),
+// so all sessions of one or many users can be revoked at once.
+@Service
+public class SessionService {
+
+    public static final String KEY_PREFIX = "jwt-sessions:";
+
+    private final RedisClusterAsyncCommands<String, Object> redisAsyncCommands;
+    private final BlacklistTokenService blacklistTokenService;
+    private final long accessTokenTtlMillis;
+    private final static Logger logger = LoggerFactory.getLogger(SessionService.class);
+
+    @Autowired
+    public SessionService(RedisClusterAsyncCommands<String, Object> redisAsyncCommands,
+                          BlacklistTokenService blacklistTokenService,
+                          @Value("${jwt.access-token.ttl-seconds:900}") long accessTokenTtlSeconds) {
+        this.redisAsyncCommands = redisAsyncCommands;
+        this.blacklistTokenService = blacklistTokenService;
+        this.accessTokenTtlMillis = accessTokenTtlSeconds * 1000;
+    }
+
+    private static String keyName(long userId) {
+        return KEY_PREFIX + userId;
+    }
+
+    // Records a newly issued token under its user. Expired entries are trimmed on the way,
+    // and the whole set expires with the newest token. Login does not wait for it.
+    public void trackSession(User user, String token) {
+        if (user.getId() == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        String keyName = keyName(user.getId());
+        redisAsyncCommands.zadd(keyName, now + accessTokenTtlMillis, TokenHasher.hash(token));
+        redisAsyncCommands.zremrangebyscore(keyName, Range.create(0L, now));
+        redisAsyncCommands.pexpire(keyName, accessTokenTtlMillis)
+                .whenComplete((result, e) -> {
+                    if (e != null) {
+                        logger.warn("Session could not be tracked: {}", e.toString());
+                    }
+                });
+    }
+
+    // Revokes every live token of the given users and returns how many tracked tokens were blacklisted.
+    // Two pipelined round trips regardless of the number of users: read every session set,
+    // then write the watermarks, blacklist entries and notifications in one batch.
+    public int revokeAllSessions(Collection<Long> userIds) {
+        long now = System.currentTimeMillis();
+        Map<Long, RedisFuture<List<Object>>> sessions = new LinkedHashMap<>();
+        for (Long userId : userIds) {
+            sessions.put(userId, redisAsyncCommands.zrangebyscore(keyName(userId),
+                    Range.from(Range.Boundary.including(now), Range.Boundary.unbounded())));
+        }
+
+        // Tokens issued up to and including this second are covered by the watermark,
+        // tracked ones are blacklisted individually as well.
+        long watermark = now / 1000;
+        int revoked = 0;
+        List<CompletableFuture<?>> writes = new ArrayList<>();
+        for (Map.Entry<Long, RedisFuture<List<Object>>> entry : sessions.entrySet()) {
+            long userId = entry.getKey();
+            List<String> hashedTokens = new ArrayList<>();
+            for (Object member : entry.getValue().toCompletableFuture().join()) {
+                hashedTokens.add(member.toString());
+            }
+
+            writes.add(blacklistTokenService.revokeIssuedBeforeAsync(userId, watermark));
+            if (!hashedTokens.isEmpty()) {
+                writes.add(blacklistTokenService.blacklistHashedTokensAsync(hashedTokens, "user:" + userId));
+                // Only the members that were read, sessions started in the meantime stay tracked.
+                writes.add(redisAsyncCommands.zrem(keyName(userId), hashedTokens.toArray()).toCompletableFuture());
+                revoked += hashedTokens.size();
+            }
+        }
+        CompletableFuture.allOf(writes.toArray(new CompletableFuture[0])).join();
+
+        logger.info("Revoked {} tracked sessions of {} users.", revoked, sessions.size());
+        return revoked;
+    }
+}
@@ -1,42 +1,78 @@
 package com.norumai.honkaiwebsitebackend.service;
 
 import com.norumai.honkaiwebsitebackend.dto.RegisterRequest;
+import com.norumai.honkaiwebsitebackend.dto.UserPage;
+import com.norumai.honkaiwebsitebackend.dto.UserSummary;
 import com.norumai.honkaiwebsitebackend.model.User;
 import com.norumai.honkaiwebsitebackend.repository.UserRepository;
+import com.norumai.honkaiwebsitebackend.util.ReplicaReads;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.Optional;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
 public class UserService {
 
     private final UserRepository userRepository;
     private final PasswordEncoder passwordEncoder;
+    private final TransactionTemplate readOnlyTransaction;
+    private final ReplicaReads replicaReads;
     private final static Logger logger = LoggerFactory.getLogger(UserService.class);
 
     @Autowired
-    public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder) {
+    public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder,
+                       PlatformTransactionManager transactionManager, ReplicaReads replicaReads) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
+        // Read-only, so it is served by a replica when there are any.
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.replicaReads = replicaReads;
     }
 
-    public List<User> getAllUsers() {
-        return userRepository.findAll();
+    // One extra row is read to tell whether another page follows.
+    public UserPage getUsers(long afterId, int limit) {
+        List<UserSummary> users = replicaReads.read(() -> userRepository.findSummariesAfter(afterId, Limit.of(limit + 1)));
+        if (users.size() <= limit) {
+            return new UserPage(users, null);
+        }
+        List<UserSummary> page = users.subList(0, limit);
+        return new UserPage(List.copyOf(page), page.get(limit - 1).id());
+    }
+
+    // Hands every user to the action while the rows are still being read, only one fetch batch is held at a time.
+    // Runs in its own transaction, since the caller is usually writing a response on another thread.
+    public void forEachUser(Consumer<UserSummary> action) {
+        readOnlyTransaction.executeWithoutResult(status -> {
+            try (Stream<UserSummary> users = userRepository.streamAllSummaries()) {
+                users.forEach(action);
+            }
+        });
     }
 
     public Optional<User> findByUsername(String username) {
         logger.debug("Finding user with username: {}...", username);
-        return userRepository.findByUsername(username);
+        return replicaReads.find(username, () -> userRepository.findByUsername(username));
     }
 
     public Optional<User> findByEmail(String email) {
         logger.debug("Finding user with email: {}...", email);
-        return userRepository.findByEmail(email);
+        return replicaReads.find(email, () -> userRepository.findByEmail(email));
+    }
+
+    public Optional<User> findByEmailOrUsername(String userInput) {
+        logger.debug("Finding user with email or username: {}...", userInput);
+        return replicaReads.find(userInput, () -> userRepository.findByEmailOrUsername(userInput));
     }
 
     public User createUser(RegisterRequest registerRequest) {
@@ -48,8 +84,12 @@ public class UserService {
             user.setBio(registerRequest.getBio());
         }
 
-        logger.info("User created successfully for: {}.", user.getUsername());
-        return userRepository.save(user);
+        // Identity ids insert right away, so a taken username or email surfaces here as a DataIntegrityViolationException.
+        User savedUser = userRepository.save(user);
+        // The replicas may not have the new row yet when the user logs in right after.
+        replicaReads.recordWrite(savedUser.getEmail(), savedUser.getUsername());
+        logger.info("User created successfully for: {}.", savedUser.getUsername());
+        return savedUser;
     }
 
     // Update user implementation here
@@ -0,0 +1,32 @@
+package com.norumai.honkaiwebsitebackend.util;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Exposes the asynchronous log appenders: logging.events.dropped{appender} and logging.queue.size{appender}.
+// Logback is configured before the application context, so every appender is known by the time this is bound.
+@Component
+public class AsyncLogMetrics implements MeterBinder {
+
+    @Override
+    public void bindTo(MeterRegistry meterRegistry) {
+        DroppingAsyncAppender.droppedEvents().forEach((name, dropped) -> {
+            FunctionCounter.builder("logging.events.dropped", dropped, LongAdder::sum)
+                    .description("Log events dropped because the asynchronous queue was full.")
+                    .tag("appender", name)
+                    .register(meterRegistry);
+            Gauge.builder("logging.queue.size", () -> {
+                        DroppingAsyncAppender appender = DroppingAsyncAppender.appender(name);
+                        return appender == null ? 0 : appender.getNumberOfElementsInQueue();
+                    })
+                    .description("Log events waiting to be written.")
+                    .tag("appender", name)
+                    .register(meterRegistry);
+        });
+    }
+}
@@ -0,0 +1,37 @@
+package com.norumai.honkaiwebsitebackend.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.crypto.bcrypt.BCrypt;
+
+// Picks the BCrypt work factor for this host by timing a hash, each extra round doubles the cost.
+public final class BCryptStrengthCalibrator {
+
+    private static final Logger logger = LoggerFactory.getLogger(BCryptStrengthCalibrator.class);
+    private static final int MAX_STRENGTH = 31;
+    private static final int SAMPLES = 3;
+
+    private BCryptStrengthCalibrator() {
+    }
+
+    // Highest strength whose estimated hash time stays within the target, never below the minimum.
+    public static int calibrate(long targetMillis, int minStrength) {
+        String salt = BCrypt.gensalt(minStrength);
+        // First run warms up the JIT, the fastest of the rest is the least noisy estimate.
+        BCrypt.hashpw("calibration", salt);
+        long fastestNanos = Long.MAX_VALUE;
+        for (int i = 0; i < SAMPLES; i++) {
+            long start = System.nanoTime();
+            BCrypt.hashpw("calibration", salt);
+            fastestNanos = Math.min(fastestNanos, System.nanoTime() - start);
+        }
+
+        double measuredMillis = Math.max(fastestNanos / 1_000_000.0, 0.001);
+        int extraRounds = (int) Math.floor(Math.log(targetMillis / measuredMillis) / Math.log(2));
+        int strength = Math.min(MAX_STRENGTH, minStrength + Math.max(0, extraRounds));
+
+        logger.info("BCrypt strength {} took {} ms, using strength {} for a {} ms target.",
+                minStrength, String.format("%.1f", measuredMillis), strength, targetMillis);
+        return strength;
+    }
+}
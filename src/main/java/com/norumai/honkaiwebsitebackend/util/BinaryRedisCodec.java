@@ -0,0 +1,171 @@
+package com.norumai.honkaiwebsitebackend.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.lettuce.core.codec.RedisCodec;
+import io.lettuce.core.codec.ToByteBufEncoder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Keys are raw UTF-8, values carry a one byte version header followed by a type tag and a compact payload.
+// Lettuce writes both straight into the outgoing Netty buffer, and heap buffers are decoded in place.
+// Values without the header (written by Jackson2JsonRedisCodec) are still read as JSON.
+public class BinaryRedisCodec implements RedisCodec<String, Object>, ToByteBufEncoder<String, Object> {
+
+    private static final Logger logger = LoggerFactory.getLogger(BinaryRedisCodec.class);
+
+    // 0xB1 can never start a JSON document or valid UTF-8, so the header cannot be confused with legacy values.
+    // The rest of 0xB0-0xBF is kept for later versions, a value written by a newer node is refused instead of misread.
+    static final byte VERSION_1 = (byte) 0xB1;
+    private static final int VERSION_MASK = 0xF0;
+    private static final int VERSION_RANGE = 0xB0;
+
+    static final byte TYPE_NULL = 0;
+    static final byte TYPE_STRING = 1;
+    static final byte TYPE_LONG = 2;
+    static final byte TYPE_INTEGER = 3;
+    static final byte TYPE_BOOLEAN = 4;
+    static final byte TYPE_DOUBLE = 5;
+    static final byte TYPE_JSON = 6;
+
+    private static final int HEADER_SIZE = 2;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Override
+    public String decodeKey(ByteBuffer bytes) {
+        return readUtf8(bytes);
+    }
+
+    @Override
+    public Object decodeValue(ByteBuffer bytes) {
+        if (!bytes.hasRemaining()) {
+            return null;
+        }
+
+        byte version = bytes.get(bytes.position());
+        if (version != VERSION_1) {
+            if ((version & VERSION_MASK) == VERSION_RANGE) {
+                throw new IllegalArgumentException("Unknown Redis value version: " + (version & 0xFF));
+            }
+            return readJson(bytes);
+        }
+
+        bytes.get(); // Version.
+        byte type = bytes.get();
+        return switch (type) {
+            case TYPE_NULL -> null;
+            case TYPE_STRING -> readUtf8(bytes);
+            case TYPE_LONG -> bytes.getLong();
+            case TYPE_INTEGER -> bytes.getInt();
+            case TYPE_BOOLEAN -> bytes.get() != 0;
+            case TYPE_DOUBLE -> bytes.getDouble();
+            case TYPE_JSON -> readJson(bytes);
+            default -> throw new IllegalArgumentException("Unknown Redis value type: " + type);
+        };
+    }
+
+    // Only used where a ByteBuffer is explicitly needed (e.g. SCAN patterns), Lettuce itself uses the ByteBuf path.
+    @Override
+    public ByteBuffer encodeKey(String key) {
+        return ByteBuffer.wrap(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public ByteBuffer encodeValue(Object value) {
+        ByteBuf target = Unpooled.buffer(estimateSize(value));
+        encodeValue(value, target);
+        return target.nioBuffer();
+    }
+
+    @Override
+    public void encodeKey(String key, ByteBuf target) {
+        if (key != null) {
+            ByteBufUtil.writeUtf8(target, key);
+        }
+    }
+
+    @Override
+    public void encodeValue(Object value, ByteBuf target) {
+        target.writeByte(VERSION_1);
+        switch (value) {
+            case null -> target.writeByte(TYPE_NULL);
+            case String string -> {
+                target.writeByte(TYPE_STRING);
+                ByteBufUtil.writeUtf8(target, string);
+            }
+            case Long number -> target.writeByte(TYPE_LONG).writeLong(number);
+            case Integer number -> target.writeByte(TYPE_INTEGER).writeInt(number);
+            case Boolean bool -> target.writeByte(TYPE_BOOLEAN).writeByte(bool ? 1 : 0);
+            case Double number -> target.writeByte(TYPE_DOUBLE).writeDouble(number);
+            default -> {
+                target.writeByte(TYPE_JSON);
+                target.writeBytes(writeJson(value));
+            }
+        }
+    }
+
+    @Override
+    public int estimateSize(Object keyOrValue) {
+        return switch (keyOrValue) {
+            case null -> HEADER_SIZE;
+            case String string -> HEADER_SIZE + ByteBufUtil.utf8MaxBytes(string);
+            case Long ignored -> HEADER_SIZE + Long.BYTES;
+            case Integer ignored -> HEADER_SIZE + Integer.BYTES;
+            case Boolean ignored -> HEADER_SIZE + 1;
+            case Double ignored -> HEADER_SIZE + Double.BYTES;
+            default -> HEADER_SIZE + 64;
+        };
+    }
+
+    // Reads the rest of the buffer, straight from the backing array when there is one.
+    private static String readUtf8(ByteBuffer bytes) {
+        int length = bytes.remaining();
+        String result;
+        if (bytes.hasArray()) {
+            result = new String(bytes.array(), bytes.arrayOffset() + bytes.position(), length, StandardCharsets.UTF_8);
+            bytes.position(bytes.limit());
+        }
+        else {
+            byte[] byteArray = new byte[length];
+            bytes.get(byteArray);
+            result = new String(byteArray, StandardCharsets.UTF_8);
+        }
+        return result;
+    }
+
+    private Object readJson(ByteBuffer bytes) {
+        try {
+            Object result;
+            if (bytes.hasArray()) {
+                result = objectMapper.readValue(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining(), Object.class);
+                bytes.position(bytes.limit());
+            }
+            else {
+                byte[] byteArray = new byte[bytes.remaining()];
+                bytes.get(byteArray);
+                result = objectMapper.readValue(byteArray, Object.class);
+            }
+            return result;
+        }
+        catch (Exception e) {
+            logger.error("Error while decoding JSON value ", e);
+            throw new RuntimeException("Error while decoding JSON value ", e);
+        }
+    }
+
+    private byte[] writeJson(Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        }
+        catch (Exception e) {
+            logger.error("Error while encoding JSON value ", e);
+            throw new RuntimeException("Error while encoding JSON value ", e);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.norumai.honkaiwebsitebackend.util;
+
+import com.norumai.honkaiwebsitebackend.service.BlacklistTokenService;
+import io.lettuce.core.KeyScanCursor;
+import io.lettuce.core.RedisChannelHandler;
+import io.lettuce.core.RedisConnectionStateListener;
+import io.lettuce.core.ScanArgs;
+import io.lettuce.core.ScanCursor;
+import io.lettuce.core.cluster.api.sync.RedisClusterCommands;
+import io.lettuce.core.codec.RedisCodec;
+import io.lettuce.core.pubsub.RedisPubSubAdapter;
+import io.lettuce.core.pubsub.RedisPubSubListener;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// In-process revocation filter. Tokens it has never seen skip Redis entirely, possible hits are confirmed with EXISTS.
+// Two filters rotate every window, so an entry lives between one and two windows before aging out.
+// Blacklist entries expire with the access token, so by default the window is the access token lifetime.
+@Component
+public class BlacklistBloomFilter extends RedisPubSubAdapter<String, Object> implements RedisConnectionStateListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(BlacklistBloomFilter.class);
+
+    private final StatefulRedisPubSubConnection<String, Object> pubSubConnection;
+    private final RedisClusterCommands<String, Object> redisCommands;
+    private final RedisCodec<String, Object> redisCodec;
+    private final boolean enabled;
+    private final long expectedInsertions;
+    private final double falsePositiveProbability;
+    private final long windowSeconds;
+
+    private volatile BloomFilter current;
+    private volatile BloomFilter previous;
+    // Until the filter has been rebuilt from Redis it may be missing revocations, so it is not consulted.
+    private volatile boolean synced = false;
+
+    private final Counter absentLookups;
+    private final Counter possibleHits;
+    private final Counter falsePositives;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "blacklist-bloom-filter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public BlacklistBloomFilter(StatefulRedisPubSubConnection<String, Object> pubSubConnection,
+                                RedisClusterCommands<String, Object> redisCommands,
+                                RedisCodec<String, Object> redisCodec,
+                                MeterRegistry meterRegistry,
+                                @Value("${blacklist.bloom.enabled:false}") boolean enabled,
+                                @Value("${blacklist.bloom.expected-insertions:100000}") long expectedInsertions,
+                                @Value("${blacklist.bloom.false-positive-probability:0.001}") double falsePositiveProbability,
+                                @Value("${blacklist.bloom.window-seconds:${jwt.access-token.ttl-seconds:900}}") long windowSeconds) {
+        this.pubSubConnection = pubSubConnection;
+        this.redisCommands = redisCommands;
+        this.redisCodec = redisCodec;
+        this.enabled = enabled;
+        this.expectedInsertions = expectedInsertions;
+        this.falsePositiveProbability = falsePositiveProbability;
+        this.windowSeconds = windowSeconds;
+        this.current = newFilter();
+        this.previous = newFilter();
+
+        this.absentLookups = Counter.builder("jwt.blacklist.bloom.lookups").tag("result", "absent").register(meterRegistry);
+        this.possibleHits = Counter.builder("jwt.blacklist.bloom.lookups").tag("result", "possible").register(meterRegistry);
+        this.falsePositives = Counter.builder("jwt.blacklist.bloom.false.positives").register(meterRegistry);
+        Gauge.builder("jwt.blacklist.bloom.false.positive.rate", this, BlacklistBloomFilter::observedFalsePositiveRate)
+                .description("False positives out of all lookups for tokens that were not blacklisted.")
+                .register(meterRegistry);
+        Gauge.builder("jwt.blacklist.bloom.expected.false.positive.probability", this,
+                        filter -> Math.max(filter.current.expectedFalsePositiveProbability(),
+                                filter.previous.expectedFalsePositiveProbability()))
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            logger.info("Blacklist Bloom filter is disabled.");
+            return;
+        }
+
+        executor.scheduleAtFixedRate(this::rotate, windowSeconds, windowSeconds, TimeUnit.SECONDS);
+        pubSubConnection.addListener((RedisPubSubListener<String, Object>) this);
+        pubSubConnection.addListener((RedisConnectionStateListener) this);
+        pubSubConnection.sync().subscribe(BlacklistNearCache.CHANNEL);
+        logger.info("Blacklist Bloom filter enabled with a {} second window.", windowSeconds);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public boolean isReady() {
+        return enabled && synced;
+    }
+
+    // False means the token was definitely never blacklisted within the last window.
+    public boolean mightContain(String hashedToken) {
+        boolean possible = current.mightContain(hashedToken) || previous.mightContain(hashedToken);
+        (possible ? possibleHits : absentLookups).increment();
+        return possible;
+    }
+
+    public void recordFalsePositive() {
+        falsePositives.increment();
+    }
+
+    public void add(String hashedToken) {
+        if (enabled) {
+            current.put(hashedToken);
+        }
+    }
+
+    @Override
+    public void message(String channel, Object message) {
+        if (BlacklistNearCache.CHANNEL.equals(channel) && message != null) {
+            add(message.toString());
+        }
+    }
+
+    @Override
+    public void subscribed(String channel, long count) {
+        if (BlacklistNearCache.CHANNEL.equals(channel)) {
+            // Also called after every reconnect. Rebuilding runs off the Redis event loop since it issues commands.
+            synced = false;
+            executor.execute(this::rebuild);
+        }
+    }
+
+    @Override
+    public void onRedisDisconnected(RedisChannelHandler<?, ?> connection) {
+        logger.warn("Blacklist Bloom filter lost its subscription, falling back to Redis.");
+        synced = false;
+    }
+
+    private void rebuild() {
+        try {
+            // Swap first, revocations published while scanning land in the new filter.
+            current = newFilter();
+            previous = newFilter();
+
+            ByteBuffer pattern = redisCodec.encodeKey(BlacklistTokenService.KEY_PREFIX + "*");
+            byte[] patternBytes = new byte[pattern.remaining()];
+            pattern.get(patternBytes);
+            ScanArgs scanArgs = ScanArgs.Builder.matches(patternBytes).limit(1000);
+
+            long loaded = 0;
+            ScanCursor cursor = ScanCursor.INITIAL;
+            do {
+                KeyScanCursor<String> result = redisCommands.scan(cursor, scanArgs);
+                for (String key : result.getKeys()) {
+                    current.put(key.substring(BlacklistTokenService.KEY_PREFIX.length()));
+                    loaded++;
+                }
+                cursor = result;
+            } while (!cursor.isFinished());
+
+            synced = true;
+            logger.info("Blacklist Bloom filter rebuilt with {} revoked tokens.", loaded);
+        }
+        catch (Exception e) {
+            logger.error("Error while rebuilding blacklist Bloom filter, retrying shortly.", e);
+            executor.schedule(this::rebuild, 5, TimeUnit.SECONDS);
+        }
+    }
+
+    void rotate() {
+        previous = current;
+        current = newFilter();
+        logger.debug("Blacklist Bloom filter rotated.");
+    }
+
+    private BloomFilter newFilter() {
+        return new BloomFilter(expectedInsertions, falsePositiveProbability);
+    }
+
+    private double observedFalsePositiveRate() {
+        double negatives = absentLookups.count() + falsePositives.count();
+        return negatives == 0 ? 0 : falsePositives.count() / negatives;
+    }
+}
@@ -0,0 +1,136 @@
+package com.norumai.honkaiwebsitebackend.util;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.lettuce.core.RedisChannelHandler;
+import io.lettuce.core.RedisConnectionStateListener;
+import io.lettuce.core.pubsub.RedisPubSubAdapter;
+import io.lettuce.core.pubsub.RedisPubSubListener;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Local copy of blacklist lookups, so most requests never leave the JVM.
+// Every node publishes its revocations on CHANNEL, so cached "not blacklisted" answers stay correct across nodes.
+@Component
+public class BlacklistNearCache extends RedisPubSubAdapter<String, Object> implements RedisConnectionStateListener {
+
+    public static final String CHANNEL = "jwt-blacklist:events";
+    private static final Logger logger = LoggerFactory.getLogger(BlacklistNearCache.class);
+
+    private final StatefulRedisPubSubConnection<String, Object> pubSubConnection;
+    private final Cache<String, Boolean> cache;
+    private final boolean enabled;
+
+    // Answers are only trusted while subscribed, anything missed during a disconnect forces a resync.
+    private volatile boolean synced = false;
+    private final AtomicLong generation = new AtomicLong();
+
+    @Autowired
+    public BlacklistNearCache(StatefulRedisPubSubConnection<String, Object> pubSubConnection,
+                              MeterRegistry meterRegistry,
+                              @Value("${blacklist.near-cache.enabled:true}") boolean enabled,
+                              @Value("${blacklist.near-cache.maximum-size:100000}") long maximumSize,
+                              @Value("${blacklist.near-cache.ttl-seconds:${jwt.access-token.ttl-seconds:900}}") long ttlSeconds) {
+        this.pubSubConnection = pubSubConnection;
+        this.enabled = enabled;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds)) // Blacklist keys expire with the access token.
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "jwt-blacklist");
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            logger.info("Blacklist near-cache is disabled, every lookup will go to Redis.");
+            return;
+        }
+
+        pubSubConnection.addListener((RedisPubSubListener<String, Object>) this);
+        pubSubConnection.addListener((RedisConnectionStateListener) this);
+        pubSubConnection.sync().subscribe(CHANNEL);
+        logger.info("Blacklist near-cache subscribed to {}.", CHANNEL);
+    }
+
+    // Returns null when the answer is unknown locally and Redis must be asked.
+    public Boolean lookup(String hashedToken) {
+        if (!enabled || !synced) {
+            return null;
+        }
+        return cache.getIfPresent(hashedToken);
+    }
+
+    // Taken before asking Redis, so an answer older than a resync is never cached.
+    public long generation() {
+        return generation.get();
+    }
+
+    public void putLookupResult(String hashedToken, boolean blacklisted, long expectedGeneration) {
+        if (!enabled || generation.get() != expectedGeneration) {
+            return;
+        }
+
+        if (blacklisted) {
+            cache.put(hashedToken, Boolean.TRUE);
+        }
+        else {
+            // Never overwrite a revocation that arrived while Redis was being asked.
+            cache.asMap().putIfAbsent(hashedToken, Boolean.FALSE);
+        }
+    }
+
+    public void markBlacklisted(String hashedToken) {
+        if (enabled) {
+            cache.put(hashedToken, Boolean.TRUE);
+        }
+    }
+
+    @Override
+    public void message(String channel, Object message) {
+        if (CHANNEL.equals(channel) && message != null) {
+            logger.debug("Received token revocation from another node.");
+            markBlacklisted(message.toString());
+        }
+    }
+
+    @Override
+    public void subscribed(String channel, long count) {
+        if (CHANNEL.equals(channel)) {
+            // Also called after every reconnect, drop whatever may have been missed.
+            invalidate();
+            synced = true;
+            logger.debug("Blacklist near-cache is in sync.");
+        }
+    }
+
+    @Override
+    public void unsubscribed(String channel, long count) {
+        if (CHANNEL.equals(channel)) {
+            synced = false;
+        }
+    }
+
+    @Override
+    public void onRedisDisconnected(RedisChannelHandler<?, ?> connection) {
+        logger.warn("Blacklist near-cache lost its subscription, falling back to Redis.");
+        synced = false;
+        invalidate();
+    }
+
+    private void invalidate() {
+        generation.incrementAndGet();
+        cache.invalidateAll();
+    }
+}
@@ -0,0 +1,16 @@
+package com.norumai.honkaiwebsitebackend.util;
+
+// Thrown under the fail-closed policy when the blacklist cannot be checked, mapped to 503 with a Retry-After header.
+public class BlacklistUnavailableException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public BlacklistUnavailableException(long retryAfterSeconds, Throwable cause) {
+        super("Token revocation status is unavailable.", cause);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
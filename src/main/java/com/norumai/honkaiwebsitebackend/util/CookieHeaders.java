@@ -0,0 +1,81 @@
+package com.norumai.honkaiwebsitebackend.util;
+
+import java.util.Enumeration;
+
+// Reads a single cookie straight from the raw Cookie header, "name1=value1; name2=value2".
+// HttpServletRequest.getCookies() parses every cookie into a Cookie object, this scans the header once
+// and the only allocation is the returned value.
+public final class CookieHeaders {
+
+    private CookieHeaders() {
+    }
+
+    // Same lookup over every Cookie header of a request (getHeaders), clients may split their cookies across several.
+    public static String findValue(Enumeration<String> cookieHeaders, String name) {
+        if (cookieHeaders == null) {
+            return null;
+        }
+
+        while (cookieHeaders.hasMoreElements()) {
+            String value = findValue(cookieHeaders.nextElement(), name);
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    // Value of the first cookie with exactly this name, without surrounding quotes. Null when absent.
+    public static String findValue(String cookieHeader, String name) {
+        if (cookieHeader == null) {
+            return null;
+        }
+
+        int length = cookieHeader.length();
+        int position = 0;
+        while (position < length) {
+            // Skip the separator and whitespace in front of the cookie name.
+            char c = cookieHeader.charAt(position);
+            if (c == ' ' || c == '\t' || c == ';' || c == ',') {
+                position++;
+                continue;
+            }
+
+            int end = cookieHeader.indexOf(';', position);
+            if (end < 0) {
+                end = length;
+            }
+
+            if (cookieHeader.regionMatches(position, name, 0, name.length())) {
+                // Whitespace is allowed around the '=', like Tomcat's parser does.
+                int separator = position + name.length();
+                while (separator < end && isWhitespace(cookieHeader.charAt(separator))) {
+                    separator++;
+                }
+                if (separator < end && cookieHeader.charAt(separator) == '=') {
+                    return value(cookieHeader, separator + 1, end);
+                }
+            }
+            position = end + 1;
+        }
+        return null;
+    }
+
+    private static String value(String cookieHeader, int start, int end) {
+        while (end > start && isWhitespace(cookieHeader.charAt(end - 1))) {
+            end--;
+        }
+        while (start < end && isWhitespace(cookieHeader.charAt(start))) {
+            start++;
+        }
+        if (end - start >= 2 && cookieHeader.charAt(start) == '"' && cookieHeader.charAt(end - 1) == '"') {
+            start++;
+            end--;
+        }
+        return cookieHeader.substring(start, end);
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t';
+    }
+}
@@ -0,0 +1,57 @@
+package com.norumai.honkaiwebsitebackend.util;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Logback AsyncAppender that keeps log I/O off the request thread, and counts every event it had to drop.
+// Once the queue passes the discarding threshold TRACE, DEBUG and INFO are dropped. WARN and ERROR are never dropped,
+// on a full queue the caller waits for room, which only happens when the writer cannot keep up with warnings alone.
+// Counts are kept per appender name, so they survive Spring Boot reconfiguring Logback at startup.
+public class DroppingAsyncAppender extends AsyncAppender {
+
+    private static final Map<String, LongAdder> droppedEvents = new ConcurrentHashMap<>();
+    private static final Map<String, DroppingAsyncAppender> appenders = new ConcurrentHashMap<>();
+
+    private LongAdder dropped;
+
+    @Override
+    public void start() {
+        dropped = droppedEvents.computeIfAbsent(getName(), name -> new LongAdder());
+        super.start();
+        appenders.put(getName(), this);
+    }
+
+    // Only asked once the queue is past the discarding threshold.
+    @Override
+    protected boolean isDiscardable(ILoggingEvent event) {
+        boolean discardable = super.isDiscardable(event);
+        if (discardable) {
+            dropped.increment();
+        }
+        return discardable;
+    }
+
+    // Below WARN an event is never worth waiting for, not even with the discarding threshold set to 0.
+    @Override
+    protected void append(ILoggingEvent event) {
+        if (getRemainingCapacity() == 0 && !event.getLevel().isGreaterOrEqual(Level.WARN)) {
+            dropped.increment();
+            return;
+        }
+        super.append(event);
+    }
+
+    public static Map<String, LongAdder> droppedEvents() {
+        return Collections.unmodifiableMap(droppedEvents);
+    }
+
+    public static DroppingAsyncAppender appender(String name) {
+        return appenders.get(name);
+    }
+}
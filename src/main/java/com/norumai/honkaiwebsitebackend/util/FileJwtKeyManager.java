@@ -0,0 +1,291 @@
+package com.norumai.honkaiwebsitebackend.util;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Jwks;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Keys persisted as one file per kid in jwt.keys.directory, which every node reads (e.g. a shared volume or secret mount).
+// The directory is reloaded periodically, so keys added by another node or by hand are picked up without a restart.
+// A rotated key is published for the activation delay before it signs anything, giving every node and JWKS cache
+// time to learn it, and is deleted once the last token it signed has expired.
+@Component
+public class FileJwtKeyManager implements JwtKeyManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileJwtKeyManager.class);
+    private static final String FILE_SUFFIX = ".key.properties";
+    // Lower bound between reloads caused by unknown kids, so random kids cannot make every request hit the disk.
+    private static final long UNKNOWN_KID_RELOAD_MILLIS = 5000;
+    private static final Duration CLOCK_SKEW = Duration.ofMinutes(1);
+
+    private final Path directory;
+    private final String algorithm;
+    private final Duration rotationPeriod;
+    private final Duration activationDelay;
+    private final Duration reloadInterval;
+    private final Duration retention;
+    private final ReentrantLock reloadLock = new ReentrantLock();
+
+    private record KeySet(ManagedKey signingKey, Map<String, ManagedKey> keys) {
+    }
+
+    private volatile KeySet keySet;
+    private volatile long nextReloadMillis;
+    private volatile long lastUnknownKidReloadMillis;
+
+    @Autowired
+    public FileJwtKeyManager(@Value("${jwt.keys.directory:keys}") String directory,
+                             @Value("${jwt.keys.algorithm:EdDSA}") String algorithm,
+                             @Value("${jwt.keys.rotation-days:30}") long rotationDays,
+                             @Value("${jwt.keys.activation-delay-seconds:300}") long activationDelaySeconds,
+                             @Value("${jwt.keys.reload-seconds:60}") long reloadSeconds,
+                             @Value("${jwt.access-token.ttl-seconds:900}") long accessTokenTtlSeconds) {
+        if (!"EdDSA".equals(algorithm) && !"ES256".equals(algorithm)) {
+            throw new IllegalArgumentException("Unsupported JWT signing algorithm: " + algorithm + ", use EdDSA or ES256.");
+        }
+        this.directory = Paths.get(directory);
+        this.algorithm = algorithm;
+        this.rotationPeriod = Duration.ofDays(rotationDays);
+        this.activationDelay = Duration.ofSeconds(activationDelaySeconds);
+        this.reloadInterval = Duration.ofSeconds(reloadSeconds);
+        // Only access tokens are signed, refresh tokens are opaque and kept in Redis.
+        this.retention = Duration.ofSeconds(accessTokenTtlSeconds).plus(CLOCK_SKEW);
+    }
+
+    @PostConstruct
+    public void init() {
+        ManagedKey signingKey = current().signingKey();
+        logger.info("JWT signing key {} ({}) loaded from {}.", signingKey.kid(), signingKey.algorithm(), directory);
+    }
+
+    @Override
+    public ManagedKey signingKey() {
+        return current().signingKey();
+    }
+
+    @Override
+    public PublicKey verificationKey(String kid) {
+        if (kid == null) {
+            return null;
+        }
+
+        ManagedKey key = current().keys().get(kid);
+        long now = System.currentTimeMillis();
+        if (key == null && now - lastUnknownKidReloadMillis >= UNKNOWN_KID_RELOAD_MILLIS) {
+            // Possibly just created by another node, look again before rejecting the token.
+            lastUnknownKidReloadMillis = now;
+            reload(true);
+            key = keySet.keys().get(kid);
+        }
+        return key != null ? key.publicKey() : null;
+    }
+
+    @Override
+    public Collection<ManagedKey> publishedKeys() {
+        return current().keys().values();
+    }
+
+    // Reloads at most once per interval. Only the first load waits, afterwards one caller reloads
+    // while everyone else keeps using the previous snapshot.
+    private KeySet current() {
+        KeySet current = keySet;
+        if (current == null) {
+            reload(true);
+        }
+        else if (System.currentTimeMillis() >= nextReloadMillis) {
+            reload(false);
+        }
+        return keySet;
+    }
+
+    private void reload(boolean wait) {
+        if (wait) {
+            reloadLock.lock();
+        }
+        else if (!reloadLock.tryLock()) {
+            return;
+        }
+
+        try {
+            Instant now = Instant.now();
+            Map<String, ManagedKey> keys = readKeys();
+            retireExpiredKeys(keys, now);
+
+            ManagedKey signingKey = activeKey(keys, now);
+            if (signingKey == null) {
+                // First start, nothing to wait for since nobody else can have issued tokens yet.
+                signingKey = createKey(now, now);
+                keys.put(signingKey.kid(), signingKey);
+            }
+            else if (isDueForRotation(signingKey, now) && !hasPendingKey(keys, now)) {
+                ManagedKey pendingKey = createKey(now, now.plus(activationDelay));
+                keys.put(pendingKey.kid(), pendingKey);
+                logger.info("Rotating JWT signing key, {} becomes active at {}.", pendingKey.kid(), pendingKey.activatesAt());
+            }
+
+            keySet = new KeySet(signingKey, Map.copyOf(keys));
+            nextReloadMillis = now.plus(reloadInterval).toEpochMilli();
+        }
+        catch (IOException e) {
+            if (keySet == null) {
+                throw new IllegalStateException("JWT signing keys could not be loaded from " + directory, e);
+            }
+            logger.error("Error reloading JWT signing keys, keeping the current ones.", e);
+            nextReloadMillis = System.currentTimeMillis() + reloadInterval.toMillis();
+        }
+        finally {
+            reloadLock.unlock();
+        }
+    }
+
+    private boolean isDueForRotation(ManagedKey signingKey, Instant now) {
+        return !signingKey.createdAt().plus(rotationPeriod).isAfter(now) || !algorithm.equals(signingKey.algorithm());
+    }
+
+    private static boolean hasPendingKey(Map<String, ManagedKey> keys, Instant now) {
+        return keys.values().stream().anyMatch(key -> key.activatesAt().isAfter(now));
+    }
+
+    // Newest key that has been published long enough, or the oldest pending one if none has been yet.
+    private static ManagedKey activeKey(Map<String, ManagedKey> keys, Instant now) {
+        Comparator<ManagedKey> byActivation = Comparator.comparing(ManagedKey::activatesAt)
+                .thenComparing(ManagedKey::createdAt)
+                .thenComparing(ManagedKey::kid);
+        return keys.values().stream()
+                .filter(key -> !key.activatesAt().isAfter(now))
+                .max(byActivation)
+                .orElseGet(() -> keys.values().stream().min(byActivation).orElse(null));
+    }
+
+    // A key is no longer needed once its successor has been signing for longer than a token lives.
+    private void retireExpiredKeys(Map<String, ManagedKey> keys, Instant now) {
+        List<ManagedKey> ordered = new ArrayList<>(keys.values());
+        ordered.sort(Comparator.comparing(ManagedKey::activatesAt));
+        for (int i = 0; i < ordered.size() - 1; i++) {
+            Instant replacedAt = ordered.get(i + 1).activatesAt();
+            if (replacedAt.plus(retention).isBefore(now)) {
+                ManagedKey retired = ordered.get(i);
+                keys.remove(retired.kid());
+                try {
+                    Files.deleteIfExists(directory.resolve(retired.kid() + FILE_SUFFIX));
+                    logger.info("Retired JWT signing key {}.", retired.kid());
+                }
+                catch (IOException e) {
+                    logger.warn("JWT signing key {} could not be deleted: {}", retired.kid(), e.toString());
+                }
+            }
+        }
+    }
+
+    private Map<String, ManagedKey> readKeys() throws IOException {
+        Files.createDirectories(directory);
+        Map<String, ManagedKey> keys = new HashMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + FILE_SUFFIX)) {
+            for (Path file : files) {
+                try {
+                    ManagedKey key = readKey(file);
+                    keys.put(key.kid(), key);
+                }
+                catch (Exception e) {
+                    logger.warn("Skipping unreadable JWT key file {}: {}", file.getFileName(), e.toString());
+                }
+            }
+        }
+        return keys;
+    }
+
+    private static ManagedKey readKey(Path file) throws Exception {
+        Properties properties = new Properties();
+        try (InputStream input = Files.newInputStream(file)) {
+            properties.load(input);
+        }
+
+        String keyAlgorithm = properties.getProperty("algorithm");
+        KeyFactory keyFactory = KeyFactory.getInstance("EdDSA".equals(keyAlgorithm) ? "Ed25519" : "EC");
+        Base64.Decoder decoder = Base64.getDecoder();
+        PrivateKey privateKey = keyFactory.generatePrivate(
+                new PKCS8EncodedKeySpec(decoder.decode(properties.getProperty("privateKey"))));
+        PublicKey publicKey = keyFactory.generatePublic(
+                new X509EncodedKeySpec(decoder.decode(properties.getProperty("publicKey"))));
+        return new ManagedKey(properties.getProperty("kid"), keyAlgorithm, privateKey, publicKey,
+                Instant.ofEpochMilli(Long.parseLong(properties.getProperty("createdAt"))),
+                Instant.ofEpochMilli(Long.parseLong(properties.getProperty("activatesAt"))));
+    }
+
+    private ManagedKey createKey(Instant now, Instant activatesAt) throws IOException {
+        KeyPair keyPair = "EdDSA".equals(algorithm)
+                ? Jwks.CRV.Ed25519.keyPair().build()
+                : Jwts.SIG.ES256.keyPair().build();
+        // RFC 7638 thumbprint, the same key always gets the same kid on every node.
+        String kid = Jwks.builder().key(keyPair.getPublic()).idFromThumbprint().build().getId();
+        ManagedKey key = new ManagedKey(kid, algorithm, keyPair.getPrivate(), keyPair.getPublic(), now, activatesAt);
+        writeKey(key);
+        return key;
+    }
+
+    // Written to a temporary file first, so other nodes never read a half-written key.
+    private void writeKey(ManagedKey key) throws IOException {
+        Base64.Encoder encoder = Base64.getEncoder();
+        Properties properties = new Properties();
+        properties.setProperty("kid", key.kid());
+        properties.setProperty("algorithm", key.algorithm());
+        properties.setProperty("createdAt", String.valueOf(key.createdAt().toEpochMilli()));
+        properties.setProperty("activatesAt", String.valueOf(key.activatesAt().toEpochMilli()));
+        properties.setProperty("privateKey", encoder.encodeToString(key.privateKey().getEncoded()));
+        properties.setProperty("publicKey", encoder.encodeToString(key.publicKey().getEncoded()));
+
+        Path temporary = Files.createTempFile(directory, key.kid(), ".tmp");
+        try {
+            try {
+                Files.setPosixFilePermissions(temporary, PosixFilePermissions.fromString("rw-------"));
+            }
+            catch (UnsupportedOperationException e) {
+                logger.debug("Key file permissions cannot be restricted on this file system.");
+            }
+            try (OutputStream output = Files.newOutputStream(temporary)) {
+                properties.store(output, "JWT signing key, keep private");
+            }
+            try {
+                Files.move(temporary, directory.resolve(key.kid() + FILE_SUFFIX), StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, directory.resolve(key.kid() + FILE_SUFFIX), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+}
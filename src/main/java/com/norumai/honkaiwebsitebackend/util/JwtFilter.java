@@ -3,22 +3,30 @@ package com.norumai.honkaiwebsitebackend.util;
 import com.norumai.honkaiwebsitebackend.service.BlacklistTokenService;
 import com.norumai.honkaiwebsitebackend.service.CustomUserDetailsService;
 import com.norumai.honkaiwebsitebackend.service.JWTService;
+import com.norumai.honkaiwebsitebackend.util.JwtFilterMetrics.Outcome;
+import com.norumai.honkaiwebsitebackend.util.JwtFilterMetrics.Stage;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
-import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
+import org.springframework.web.cors.CorsUtils;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @Component
 public class JwtFilter extends OncePerRequestFilter { // OncePerRequestFilter verifies once, good for token bearer like JWT.
@@ -26,36 +34,45 @@ public class JwtFilter extends OncePerRequestFilter { // OncePerRequestFilter ve
     private final CustomUserDetailsService userDetailsService;
     private final JWTService jwtService;
     private final BlacklistTokenService blacklistTokenService;
+    private final JwtFilterMetrics metrics;
+    private final LogSampler validatedLogSampler;
     private static final Logger logger = LoggerFactory.getLogger(JwtFilter.class);
 
+    // Routes that never need the access token, matched exactly against the path within the application.
+    // SecurityConfig permits the same list.
+    public static final Set<String> PUBLIC_PATHS = Set.of(
+            "/auth/login", "/auth/register", "/auth/refresh", "/.well-known/jwks.json");
+
+    private static final String JWT_COOKIE = "jwt";
+    private static final String ALREADY_FILTERED_ATTRIBUTE = JwtFilter.class.getName() + ALREADY_FILTERED_SUFFIX;
+
     @Autowired
-    public JwtFilter(CustomUserDetailsService userDetailsService, JWTService jwtService, BlacklistTokenService blacklistTokenService) {
+    public JwtFilter(CustomUserDetailsService userDetailsService, JWTService jwtService, BlacklistTokenService blacklistTokenService,
+                     JwtFilterMetrics metrics, @Value("${logging.sample.interval-millis:1000}") long logSampleIntervalMillis) {
         this.userDetailsService = userDetailsService;
         this.jwtService = jwtService;
         this.blacklistTokenService = blacklistTokenService;
+        this.metrics = metrics;
+        this.validatedLogSampler = new LogSampler(Duration.ofMillis(logSampleIntervalMillis));
     }
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
             throws ServletException, IOException {
 
-        final String authHeader = request.getHeader("Authorization");
-        logger.debug("Processed request authentication header: {}.", authHeader != null ? "Authorization" : "Null");
+        final long requestStart = System.nanoTime();
+        if (logger.isDebugEnabled()) {
+            logger.debug("Processed request authentication header: {}.",
+                    request.getHeader(HttpHeaders.AUTHORIZATION) != null ? "Authorization" : "Null");
+        }
 
-        String token = null;
-        String email = null;
-        Cookie[] cookies = request.getCookies();
+        JWTService.VerifiedToken verifiedToken = null;
 
-        // User whose are logged in, have cookies.
+        // User whose are logged in, have cookies. Only the jwt cookie is needed, read straight from the header.
         // TODO: Potential security flaw here, attacker striking if somehow obtain JWT token from cookie without being logged in.
-        if (cookies != null) {
-            for (Cookie cookie : cookies) {
-                if (cookie.getName().equals("jwt")) {
-                    token = cookie.getValue();
-                    logger.debug("Token has been received from cookie.");
-                    break;
-                }
-            }
+        String token = CookieHeaders.findValue(request.getHeaders(HttpHeaders.COOKIE), JWT_COOKIE);
+        if (token != null) {
+            logger.debug("Token has been received from cookie.");
         }
         else {
             // If no account found, no need to authenticate because no account found.
@@ -64,46 +81,169 @@ public class JwtFilter extends OncePerRequestFilter { // OncePerRequestFilter ve
 
         if (token != null) {
             // Valid JWT token is "{header}.{Payload}.{Signature}".
-            if (!token.contains(".") || token.split("\\.").length != 3) {
+            if (!hasJwtFormat(token)) {
+                metrics.recordStage(Stage.COOKIE, Outcome.MALFORMED, requestStart);
+                metrics.recordRequest(Outcome.MALFORMED, requestStart);
                 logger.error("Invalid JWT format detected.");
                 response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid JWT format");
                 return;
             }
+            metrics.recordStage(Stage.COOKIE, Outcome.FOUND, requestStart);
+
+            // Blacklist lookup runs in the background while the signature is verified on this thread.
+            // Hashed once here, both the blacklist and the verified token cache are keyed by it.
+            // Its stage time therefore overlaps the parse stage, it is how long the answer took to arrive.
+            long blacklistStart = System.nanoTime();
+            String hashedToken = TokenHasher.hash(token);
+            CompletableFuture<Boolean> blacklisted = blacklistTokenService.isHashedTokenBlacklistedAsync(hashedToken);
+            Exception verificationError = null;
+            long parseStart = System.nanoTime();
+            try {
+                // Signature is verified here once, the claims are reused for validation below.
+                verifiedToken = jwtService.verifyToken(token, hashedToken);
+                metrics.recordStage(Stage.PARSE, Outcome.VALID, parseStart);
+                logger.debug("Token of the email has been found.");
+            }
+            catch (Exception e) {
+                verificationError = e;
+                metrics.recordStage(Stage.PARSE, JwtFilterMetrics.parseOutcome(e), parseStart);
+            }
 
             // Check if the current token is blacklisted.
-            if (blacklistTokenService.isTokenBlacklisted(token)) {
+            boolean isBlacklisted;
+            try {
+                isBlacklisted = blacklisted.join();
+            }
+            catch (CompletionException e) {
+                if (e.getCause() instanceof BlacklistUnavailableException unavailable) {
+                    metrics.recordStage(Stage.BLACKLIST, Outcome.UNAVAILABLE, blacklistStart);
+                    metrics.recordRequest(Outcome.UNAVAILABLE, requestStart);
+                    rejectUnavailable(response, unavailable);
+                    return;
+                }
+                throw e;
+            }
+
+            if (isBlacklisted) {
+                metrics.recordStage(Stage.BLACKLIST, Outcome.BLACKLISTED, blacklistStart);
+                metrics.recordRequest(Outcome.BLACKLISTED, requestStart);
                 logger.warn("Blacklisted token detected.");
                 response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "Blacklisted token detected.");
                 return;
             }
+            metrics.recordStage(Stage.BLACKLIST, Outcome.CLEAN, blacklistStart);
 
-            try {
-                email = jwtService.extractEmail(token);
-                logger.debug("Token of the email has been found.");
-            }
-            catch (Exception e) {
+            if (verificationError != null) {
+                metrics.recordRequest(JwtFilterMetrics.parseOutcome(verificationError), requestStart);
                 logger.error("JWT Token cannot be identified.");
                 response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid JWT Token");
                 return;
             }
+
+            // Every session of the user may have been revoked at once since this token was issued.
+            long watermarkStart = System.nanoTime();
+            try {
+                if (blacklistTokenService.isRevokedByWatermark(jwtService.extractUserId(verifiedToken),
+                        verifiedToken.issuedAt())) {
+                    metrics.recordStage(Stage.WATERMARK, Outcome.REVOKED, watermarkStart);
+                    metrics.recordRequest(Outcome.REVOKED, requestStart);
+                    logger.warn("Token issued before the user's sessions were revoked.");
+                    response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "Blacklisted token detected.");
+                    return;
+                }
+            }
+            catch (BlacklistUnavailableException e) {
+                metrics.recordStage(Stage.WATERMARK, Outcome.UNAVAILABLE, watermarkStart);
+                metrics.recordRequest(Outcome.UNAVAILABLE, requestStart);
+                rejectUnavailable(response, e);
+                return;
+            }
+            metrics.recordStage(Stage.WATERMARK, Outcome.CLEAN, watermarkStart);
+        }
+        else {
+            metrics.recordStage(Stage.COOKIE, Outcome.MISSING, requestStart);
         }
 
-        if (email != null && SecurityContextHolder.getContext().getAuthentication() == null) {
+        Outcome outcome = verifiedToken != null ? Outcome.VALID : Outcome.ANONYMOUS;
+        if (verifiedToken != null && verifiedToken.email() != null
+                && SecurityContextHolder.getContext().getAuthentication() == null) {
+            // Signed claims carry everything needed, otherwise fall back to loading the user.
             // UserDetails has been custom set to use User's Email for authentication.
-            UserDetails userDetails = userDetailsService.loadUserByUsername(email);
+            long userLoadStart = System.nanoTime();
+            UserDetails userDetails = jwtService.extractUserDetails(verifiedToken);
+            if (userDetails != null) {
+                metrics.recordStage(Stage.USER_LOAD, Outcome.CLAIMS, userLoadStart);
+            }
+            else {
+                try {
+                    userDetails = userDetailsService.loadUserByEmail(verifiedToken.email());
+                }
+                catch (RuntimeException e) {
+                    metrics.recordStage(Stage.USER_LOAD, Outcome.NOT_FOUND, userLoadStart);
+                    metrics.recordRequest(Outcome.INVALID, requestStart);
+                    throw e;
+                }
+                metrics.recordStage(Stage.USER_LOAD, Outcome.DATABASE, userLoadStart);
+            }
 
-            if (jwtService.validateToken(token, userDetails)) {
-                logger.info("Token successfully validated for the email.");
+            long validationStart = System.nanoTime();
+            if (jwtService.validateToken(verifiedToken, userDetails)) {
+                metrics.recordStage(Stage.VALIDATION, Outcome.VALID, validationStart);
+                // Logged on every authenticated request otherwise, one message per interval is enough to see it works.
+                if (logger.isInfoEnabled()) {
+                    long suppressed = validatedLogSampler.sample();
+                    if (suppressed >= 0) {
+                        logger.info("Token successfully validated for the email ({} more since the last message).", suppressed);
+                    }
+                }
                 UsernamePasswordAuthenticationToken userPassAuthToken = new UsernamePasswordAuthenticationToken(userDetails,
                         null, userDetails.getAuthorities());
                 userPassAuthToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
                 SecurityContextHolder.getContext().setAuthentication(userPassAuthToken);
             }
             else {
+                outcome = verifiedToken.isExpired() ? Outcome.EXPIRED : Outcome.INVALID;
+                metrics.recordStage(Stage.VALIDATION, outcome, validationStart);
                 logger.error("Token validation failed.");
             }
         }
+        metrics.recordRequest(outcome, requestStart);
 
         filterChain.doFilter(request, response);
     }
+
+    // Public routes and CORS preflights skip the filter entirely, nothing there uses the authentication.
+    // Refresh is reached with an expired or missing access token, the endpoint checks the refresh token itself.
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        if (CorsUtils.isPreFlightRequest(request)) {
+            return true;
+        }
+        String uri = request.getRequestURI();
+        String contextPath = request.getContextPath();
+        return PUBLIC_PATHS.contains(contextPath.isEmpty() ? uri : uri.substring(contextPath.length()));
+    }
+
+    // Precomputed, OncePerRequestFilter would otherwise build the attribute name on every request.
+    @Override
+    protected String getAlreadyFilteredAttributeName() {
+        return ALREADY_FILTERED_ATTRIBUTE;
+    }
+
+    // Fail-closed policy and Redis is unreachable, the token cannot be trusted right now.
+    private static void rejectUnavailable(HttpServletResponse response, BlacklistUnavailableException e) throws IOException {
+        logger.warn("Blacklist unavailable, rejecting token.");
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()));
+        response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Token status unavailable.");
+    }
+
+    // Checks for exactly three non-empty, dot separated parts without allocating.
+    private static boolean hasJwtFormat(String token) {
+        int firstDot = token.indexOf('.');
+        int secondDot = firstDot < 0 ? -1 : token.indexOf('.', firstDot + 1);
+        return firstDot > 0
+                && secondDot > firstDot + 1
+                && secondDot < token.length() - 1
+                && token.indexOf('.', secondDot + 1) < 0;
+    }
 }
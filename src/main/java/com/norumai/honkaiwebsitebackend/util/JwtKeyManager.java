@@ -0,0 +1,26 @@
+package com.norumai.honkaiwebsitebackend.util;
+
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.time.Instant;
+import java.util.Collection;
+
+// Source of the asymmetric keys tokens are signed with. Every key is identified by its kid,
+// which is written into the token header so any node, or an edge service reading the JWKS, can pick the right one.
+public interface JwtKeyManager {
+
+    // A key pair with its lifecycle. Keys are published before they sign anything, and kept after they stop,
+    // until every token they signed has expired.
+    record ManagedKey(String kid, String algorithm, PrivateKey privateKey, PublicKey publicKey,
+                      Instant createdAt, Instant activatesAt) {
+    }
+
+    // The key new tokens are signed with.
+    ManagedKey signingKey();
+
+    // Null for unknown or retired kids.
+    PublicKey verificationKey(String kid);
+
+    // Every key that may still sign or verify a token, as published through the JWKS endpoint.
+    Collection<ManagedKey> publishedKeys();
+}
@@ -0,0 +1,30 @@
+package com.norumai.honkaiwebsitebackend.util;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Lets one message through per interval and counts the rest, for success messages that would otherwise be logged
+// on every request. A suppressed call is a clock read and a counter increment, nothing is formatted or allocated.
+public class LogSampler {
+
+    private final long intervalNanos;
+    private final AtomicLong nextAllowed;
+    private final LongAdder suppressed = new LongAdder();
+
+    public LogSampler(Duration interval) {
+        this.intervalNanos = interval.toNanos();
+        this.nextAllowed = new AtomicLong(System.nanoTime());
+    }
+
+    // How many messages were suppressed since the last one went through, or -1 when this one should be suppressed.
+    public long sample() {
+        long now = System.nanoTime();
+        long next = nextAllowed.get();
+        if (now - next >= 0 && nextAllowed.compareAndSet(next, now + intervalNanos)) {
+            return suppressed.sumThenReset();
+        }
+        suppressed.increment();
+        return -1;
+    }
+}
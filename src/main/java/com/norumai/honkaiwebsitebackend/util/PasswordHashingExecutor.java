@@ -0,0 +1,120 @@
+package com.norumai.honkaiwebsitebackend.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Fixed pool of platform threads for password hashing, sized to the CPU instead of the request threads.
+// When the queue is full, or a caller has waited too long, the work is rejected so the client can retry later.
+// A rejected task that is still queued is removed and never hashed. One that already started cannot be stopped,
+// BCrypt ignores interrupts, so it keeps its thread until the hash is done (about password-hashing.bcrypt.target-millis).
+// Under sustained overload every thread may be busy with such abandoned hashes, so by default the queue only holds
+// what the pool can hash within the wait timeout. Anything beyond is rejected at once instead of being abandoned later.
+@Component
+public class PasswordHashingExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(PasswordHashingExecutor.class);
+
+    private final ThreadPoolExecutor executor;
+    private final long waitTimeoutMillis;
+    private final long retryAfterSeconds;
+    private final MeterRegistry meterRegistry;
+    private final Counter rejected;
+
+    @Autowired
+    public PasswordHashingExecutor(MeterRegistry meterRegistry,
+                                   @Value("${password-hashing.pool-size:0}") int poolSize,
+                                   @Value("${password-hashing.queue-capacity:0}") int queueCapacity,
+                                   @Value("${password-hashing.wait-timeout-millis:5000}") long waitTimeoutMillis,
+                                   @Value("${password-hashing.retry-after-seconds:1}") long retryAfterSeconds,
+                                   @Value("${password-hashing.bcrypt.target-millis:250}") long hashMillis) {
+        // Zero means one thread per core.
+        int threads = poolSize > 0 ? poolSize : Runtime.getRuntime().availableProcessors();
+        // Zero means as many hashes as the threads finish within the wait timeout.
+        if (queueCapacity <= 0) {
+            queueCapacity = (int) Math.max(1, waitTimeoutMillis * threads / Math.max(1, hashMillis));
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "password-hashing-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.waitTimeoutMillis = waitTimeoutMillis;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.meterRegistry = meterRegistry;
+
+        this.rejected = Counter.builder("password.hashing.rejected").register(meterRegistry);
+        Gauge.builder("password.hashing.queue.depth", executor, pool -> pool.getQueue().size())
+                .description("Password hashing tasks waiting for a thread.")
+                .register(meterRegistry);
+        Gauge.builder("password.hashing.active", executor, ThreadPoolExecutor::getActiveCount)
+                .register(meterRegistry);
+        logger.info("Password hashing executor started with {} threads and a queue of {}.", threads, queueCapacity);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    // Runs the hashing operation on the pool and waits for it, recording how long the hash itself took.
+    public <T> T execute(String operation, Callable<T> task) {
+        Timer timer = Timer.builder("password.hashing.duration")
+                .tag("operation", operation)
+                .register(meterRegistry);
+
+        Future<T> future;
+        try {
+            future = executor.submit(() -> timer.recordCallable(task));
+        }
+        catch (RejectedExecutionException e) {
+            rejected.increment();
+            logger.warn("Password hashing queue is full, rejecting {}.", operation);
+            throw new PasswordHashingRejectedException(retryAfterSeconds);
+        }
+
+        try {
+            return future.get(waitTimeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        catch (TimeoutException e) {
+            // Frees the queue slot right away, a cancelled task would otherwise only be skipped once a thread takes it.
+            future.cancel(true);
+            executor.remove((Runnable) future);
+            rejected.increment();
+            logger.warn("Password hashing did not finish within {} ms, rejecting {}.", waitTimeoutMillis, operation);
+            throw new PasswordHashingRejectedException(retryAfterSeconds);
+        }
+        catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for password hashing.", e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException("Password hashing failed.", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.norumai.honkaiwebsitebackend.util;
+
+// Thrown when the password hashing pool is saturated, mapped to 503 with a Retry-After header.
+public class PasswordHashingRejectedException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public PasswordHashingRejectedException(long retryAfterSeconds) {
+        super("Password hashing is saturated, retry after " + retryAfterSeconds + " seconds.");
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
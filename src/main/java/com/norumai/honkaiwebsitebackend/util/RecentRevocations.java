@@ -0,0 +1,58 @@
+package com.norumai.honkaiwebsitebackend.util;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.lettuce.core.pubsub.RedisPubSubAdapter;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+// Tokens revoked recently on this node or announced by others, kept regardless of the Redis connection state.
+// Unlike the near-cache it is never dropped on disconnect, so it can still answer while Redis is unreachable.
+@Component
+public class RecentRevocations extends RedisPubSubAdapter<String, Object> {
+
+    private final StatefulRedisPubSubConnection<String, Object> pubSubConnection;
+    private final Cache<String, Boolean> revocations;
+
+    @Autowired
+    public RecentRevocations(StatefulRedisPubSubConnection<String, Object> pubSubConnection,
+                             MeterRegistry meterRegistry,
+                             @Value("${blacklist.recent-revocations.maximum-size:100000}") long maximumSize,
+                             @Value("${blacklist.recent-revocations.ttl-seconds:${jwt.access-token.ttl-seconds:900}}") long ttlSeconds) {
+        this.pubSubConnection = pubSubConnection;
+        this.revocations = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds)) // Blacklist keys expire with the access token.
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, revocations, "jwt-recent-revocations");
+    }
+
+    @PostConstruct
+    public void init() {
+        pubSubConnection.addListener(this);
+        pubSubConnection.sync().subscribe(BlacklistNearCache.CHANNEL);
+    }
+
+    public void add(String hashedToken) {
+        revocations.put(hashedToken, Boolean.TRUE);
+    }
+
+    public boolean contains(String hashedToken) {
+        return revocations.getIfPresent(hashedToken) != null;
+    }
+
+    @Override
+    public void message(String channel, Object message) {
+        if (BlacklistNearCache.CHANNEL.equals(channel) && message != null) {
+            add(message.toString());
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.norumai.honkaiwebsitebackend.util;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+// Runs user lookups on the replicas, with read-your-writes for users that were just created.
+// Read-only transactions go to a replica, read-write ones to the primary (see DataSourceConfig).
+// Identities written on this node stay on the primary for a short window. A miss on a replica is final otherwise,
+// so failed logins for unknown users cost one replica query and nothing on the primary. A user registered on another
+// node is not found here until the replica caught up (usually well below a second), a retried login then succeeds.
+// Only a failing replica sends the query to the primary.
+@Component
+public class ReplicaReads {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplicaReads.class);
+
+    private final boolean replicasEnabled;
+    private final TransactionTemplate replicaTransaction;
+    private final TransactionTemplate primaryTransaction;
+    private final Cache<String, Boolean> recentWrites;
+
+    @Autowired
+    public ReplicaReads(PlatformTransactionManager transactionManager,
+                        @Value("${datasource.replica.urls:}") String replicaUrls,
+                        @Value("${datasource.replica.read-your-writes-seconds:5}") long readYourWritesSeconds,
+                        @Value("${datasource.replica.read-your-writes-maximum-size:10000}") long maximumSize) {
+        this.replicasEnabled = !replicaUrls.isBlank();
+        this.replicaTransaction = new TransactionTemplate(transactionManager);
+        this.replicaTransaction.setReadOnly(true);
+        // Read-write, so the connection comes from the primary. Nothing is changed, the commit flushes nothing.
+        this.primaryTransaction = new TransactionTemplate(transactionManager);
+        this.recentWrites = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(readYourWritesSeconds))
+                .maximumSize(maximumSize)
+                .build();
+    }
+
+    // Identities (email, username) whose rows just changed, read from the primary until the replicas caught up.
+    public void recordWrite(String... identities) {
+        if (!replicasEnabled) {
+            return;
+        }
+        for (String identity : identities) {
+            if (identity != null) {
+                recentWrites.put(normalize(identity), Boolean.TRUE);
+            }
+        }
+    }
+
+    // Lookup of one user by email or username.
+    public <T> Optional<T> find(String identity, Supplier<Optional<T>> query) {
+        if (!replicasEnabled) {
+            return replicaTransaction.execute(status -> query.get());
+        }
+        if (identity != null && recentWrites.getIfPresent(normalize(identity)) != null) {
+            return primaryTransaction.execute(status -> query.get());
+        }
+
+        return onReplica(query);
+    }
+
+    // Reads where a slightly stale answer is fine, e.g. listings.
+    public <T> T read(Supplier<T> query) {
+        if (!replicasEnabled) {
+            return replicaTransaction.execute(status -> query.get());
+        }
+        return onReplica(query);
+    }
+
+    private <T> T onReplica(Supplier<T> query) {
+        try {
+            return replicaTransaction.execute(status -> query.get());
+        }
+        catch (TransactionException | DataAccessException e) {
+            logger.warn("Replica read failed, asking the primary: {}", e.toString());
+            return primaryTransaction.execute(status -> query.get());
+        }
+    }
+
+    private static String normalize(String identity) {
+        return identity.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,65 @@
+package com.norumai.honkaiwebsitebackend.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Read-only side of the database, hands out connections of the replicas in turn.
+// Only reached for read-only transactions (see DataSourceConfig), writes never get here.
+// When a replica cannot hand out a connection the read goes to the primary instead of failing the request.
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    private final int replicaCount;
+    private final DataSource primary;
+    private final AtomicInteger next = new AtomicInteger();
+
+    public ReplicaRoutingDataSource(List<? extends DataSource> replicas, DataSource primary) {
+        Map<Object, Object> targets = new HashMap<>();
+        for (int i = 0; i < replicas.size(); i++) {
+            targets.put(i, replicas.get(i));
+        }
+        this.replicaCount = replicas.size();
+        this.primary = primary;
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        setLenientFallback(false);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return Math.floorMod(next.getAndIncrement(), replicaCount);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        try {
+            return super.getConnection();
+        }
+        catch (SQLException e) {
+            logger.warn("Replica connection unavailable, reading from the primary: {}", e.getMessage());
+            return primary.getConnection();
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        try {
+            return super.getConnection(username, password);
+        }
+        catch (SQLException e) {
+            logger.warn("Replica connection unavailable, reading from the primary: {}", e.getMessage());
+            return primary.getConnection(username, password);
+        }
+    }
+}
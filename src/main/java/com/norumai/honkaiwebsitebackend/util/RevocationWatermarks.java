@@ -0,0 +1,126 @@
+package com.norumai.honkaiwebsitebackend.util;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.lettuce.core.RedisChannelHandler;
+import io.lettuce.core.RedisConnectionStateListener;
+import io.lettuce.core.pubsub.RedisPubSubAdapter;
+import io.lettuce.core.pubsub.RedisPubSubListener;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Local copy of the per-user "tokens issued before T are revoked" watermarks, keyed by user id.
+// Every node publishes new watermarks on CHANNEL as "userId:epochSeconds", 0 means the user has none.
+@Component
+public class RevocationWatermarks extends RedisPubSubAdapter<String, Object> implements RedisConnectionStateListener {
+
+    public static final String CHANNEL = "jwt-revoked-before:events";
+    private static final Logger logger = LoggerFactory.getLogger(RevocationWatermarks.class);
+
+    private final StatefulRedisPubSubConnection<String, Object> pubSubConnection;
+    private final Cache<Long, Long> cache;
+
+    // Same rules as the blacklist near-cache, answers are only trusted while subscribed.
+    private volatile boolean synced = false;
+    private final AtomicLong generation = new AtomicLong();
+
+    @Autowired
+    public RevocationWatermarks(StatefulRedisPubSubConnection<String, Object> pubSubConnection,
+                                MeterRegistry meterRegistry,
+                                @Value("${sessions.watermark-cache.maximum-size:100000}") long maximumSize,
+                                @Value("${sessions.watermark-cache.ttl-seconds:${jwt.refresh-token.ttl-seconds:1209600}}") long ttlSeconds) {
+        this.pubSubConnection = pubSubConnection;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds)) // Watermarks outlive the refresh token families they cover.
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "jwt-revoked-before");
+    }
+
+    @PostConstruct
+    public void init() {
+        pubSubConnection.addListener((RedisPubSubListener<String, Object>) this);
+        pubSubConnection.addListener((RedisConnectionStateListener) this);
+        pubSubConnection.sync().subscribe(CHANNEL);
+        logger.info("Revocation watermarks subscribed to {}.", CHANNEL);
+    }
+
+    // Returns null when the watermark is unknown locally and Redis must be asked.
+    public Long lookup(long userId) {
+        if (!synced) {
+            return null;
+        }
+        return cache.getIfPresent(userId);
+    }
+
+    // Taken before asking Redis, so an answer older than a resync is never cached.
+    public long generation() {
+        return generation.get();
+    }
+
+    public void putLookupResult(long userId, long watermark, long expectedGeneration) {
+        if (generation.get() == expectedGeneration) {
+            update(userId, watermark);
+        }
+    }
+
+    // Watermarks only move forward, a late or duplicate event never lowers one.
+    public void update(long userId, long watermark) {
+        cache.asMap().merge(userId, watermark, Math::max);
+    }
+
+    @Override
+    public void message(String channel, Object message) {
+        if (!CHANNEL.equals(channel) || message == null) {
+            return;
+        }
+
+        String event = message.toString();
+        int separator = event.indexOf(':');
+        try {
+            update(Long.parseLong(event, 0, separator, 10), Long.parseLong(event, separator + 1, event.length(), 10));
+            logger.debug("Received revocation watermark from another node.");
+        }
+        catch (IndexOutOfBoundsException | NumberFormatException e) {
+            logger.warn("Ignoring malformed revocation watermark event: {}", event);
+        }
+    }
+
+    @Override
+    public void subscribed(String channel, long count) {
+        if (CHANNEL.equals(channel)) {
+            // Also called after every reconnect, drop whatever may have been missed.
+            invalidate();
+            synced = true;
+        }
+    }
+
+    @Override
+    public void unsubscribed(String channel, long count) {
+        if (CHANNEL.equals(channel)) {
+            synced = false;
+        }
+    }
+
+    @Override
+    public void onRedisDisconnected(RedisChannelHandler<?, ?> connection) {
+        synced = false;
+        invalidate();
+    }
+
+    private void invalidate() {
+        generation.incrementAndGet();
+        cache.invalidateAll();
+    }
+}
@@ -0,0 +1,146 @@
+package com.norumai.honkaiwebsitebackend.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// SHA-256 digest of a raw token, used to identify tokens without storing them.
+// Always 64 lowercase hex characters. Digests and buffers are pooled rather than thread-local,
+// since request threads are virtual and short-lived, so the only allocation per call is the resulting String.
+public final class TokenHasher {
+
+    public static final int HASH_LENGTH = 64;
+
+    private static final int DIGEST_LENGTH = 32;
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final int SLOTS = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) << 1;
+    private static final AtomicReferenceArray<Hasher> pool = new AtomicReferenceArray<>(SLOTS);
+
+    private TokenHasher() {
+    }
+
+    public static String hash(String token) {
+        Hasher hasher = acquire();
+        try {
+            return hasher.hash(token);
+        }
+        finally {
+            release(hasher);
+        }
+    }
+
+    // Builds e.g. a Redis key from a prebuilt prefix and an already computed hash, in one copy.
+    public static String prefixed(byte[] asciiPrefix, String hashedToken) {
+        Hasher hasher = acquire();
+        try {
+            return hasher.prefixed(asciiPrefix, hashedToken);
+        }
+        finally {
+            release(hasher);
+        }
+    }
+
+    public static byte[] asciiPrefix(String prefix) {
+        return prefix.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    // Takes a hasher from a random slot, a new one is only built when every slot nearby is in use.
+    private static Hasher acquire() {
+        int start = ThreadLocalRandom.current().nextInt(SLOTS);
+        for (int i = 0; i < SLOTS; i++) {
+            Hasher hasher = pool.getAndSet((start + i) & (SLOTS - 1), null);
+            if (hasher != null) {
+                return hasher;
+            }
+        }
+        return new Hasher();
+    }
+
+    private static void release(Hasher hasher) {
+        int start = ThreadLocalRandom.current().nextInt(SLOTS);
+        for (int i = 0; i < SLOTS; i++) {
+            if (pool.compareAndSet((start + i) & (SLOTS - 1), null, hasher)) {
+                return;
+            }
+        }
+        // Pool is full, let this one be collected.
+    }
+
+    private static final class Hasher {
+
+        private final MessageDigest messageDigest;
+        private final byte[] digest = new byte[DIGEST_LENGTH];
+        private byte[] input = new byte[1024];
+        private byte[] output = new byte[128];
+
+        private Hasher() {
+            try {
+                this.messageDigest = MessageDigest.getInstance("SHA-256");
+            }
+            catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is not available.", e);
+            }
+        }
+
+        private String hash(String token) {
+            // JWTs are plain ASCII (base64url and dots), anything else goes through the regular encoder.
+            int length = token.length();
+            if (input.length < length) {
+                input = new byte[Math.max(length, input.length * 2)];
+            }
+            boolean ascii = true;
+            for (int i = 0; i < length; i++) {
+                char c = token.charAt(i);
+                if (c >= 0x80) {
+                    ascii = false;
+                    break;
+                }
+                input[i] = (byte) c;
+            }
+
+            if (ascii) {
+                messageDigest.update(input, 0, length);
+            }
+            else {
+                messageDigest.update(token.getBytes(StandardCharsets.UTF_8));
+            }
+
+            try {
+                messageDigest.digest(digest, 0, DIGEST_LENGTH);
+            }
+            catch (DigestException e) {
+                messageDigest.reset();
+                throw new IllegalStateException("Error while hashing token.", e);
+            }
+
+            int offset = writePrefix(null, HASH_LENGTH);
+            for (int i = 0; i < DIGEST_LENGTH; i++) {
+                output[offset++] = HEX[(digest[i] >> 4) & 0xF];
+                output[offset++] = HEX[digest[i] & 0xF];
+            }
+            return new String(output, 0, offset, StandardCharsets.ISO_8859_1);
+        }
+
+        private String prefixed(byte[] prefix, String hashedToken) {
+            int offset = writePrefix(prefix, hashedToken.length());
+            for (int i = 0; i < hashedToken.length(); i++) {
+                output[offset++] = (byte) hashedToken.charAt(i);
+            }
+            return new String(output, 0, offset, StandardCharsets.ISO_8859_1);
+        }
+
+        private int writePrefix(byte[] prefix, int remaining) {
+            int prefixLength = prefix == null ? 0 : prefix.length;
+            if (output.length < prefixLength + remaining) {
+                output = new byte[prefixLength + remaining];
+            }
+            if (prefixLength > 0) {
+                System.arraycopy(prefix, 0, output, 0, prefixLength);
+            }
+            return prefixLength;
+        }
+    }
+}
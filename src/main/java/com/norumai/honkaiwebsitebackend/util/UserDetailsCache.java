@@ -0,0 +1,147 @@
+package com.norumai.honkaiwebsitebackend.util;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.lettuce.core.RedisException;
+import io.lettuce.core.cluster.api.sync.RedisClusterCommands;
+import io.lettuce.core.pubsub.RedisPubSubAdapter;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+// Two-tier cache of the role behind each email: local Caffeine first, then the shared Redis copy, then MySQL.
+// Passwords are never cached, the entries are only used to rebuild UserDetails for already authenticated tokens.
+// Redis failures never fail the request: a read counts as a miss and goes to MySQL, a write or eviction is skipped.
+@Component
+public class UserDetailsCache extends RedisPubSubAdapter<String, Object> {
+
+    public static final String KEY_PREFIX = "user-details:";
+    public static final String CHANNEL = "user-details:events";
+    private static final Logger logger = LoggerFactory.getLogger(UserDetailsCache.class);
+
+    private final RedisClusterCommands<String, Object> redisCommands;
+    private final StatefulRedisPubSubConnection<String, Object> pubSubConnection;
+    private final Cache<String, String> localCache;
+    private final boolean enabled;
+    private final long redisTtlSeconds;
+    private final Counter redisHits;
+    private final Counter redisMisses;
+
+    @Autowired
+    public UserDetailsCache(RedisClusterCommands<String, Object> redisCommands,
+                            StatefulRedisPubSubConnection<String, Object> pubSubConnection,
+                            MeterRegistry meterRegistry,
+                            @Value("${user-details.cache.enabled:true}") boolean enabled,
+                            @Value("${user-details.cache.maximum-size:10000}") long maximumSize,
+                            @Value("${user-details.cache.local-ttl-seconds:60}") long localTtlSeconds,
+                            @Value("${user-details.cache.redis-ttl-seconds:600}") long redisTtlSeconds) {
+        this.redisCommands = redisCommands;
+        this.pubSubConnection = pubSubConnection;
+        this.enabled = enabled;
+        this.redisTtlSeconds = redisTtlSeconds;
+        this.localCache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofSeconds(localTtlSeconds))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, localCache, "user-details");
+        this.redisHits = Counter.builder("user.details.cache.redis").tag("result", "hit").register(meterRegistry);
+        this.redisMisses = Counter.builder("user.details.cache.redis").tag("result", "miss").register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            logger.info("User details cache is disabled, every request will query the database.");
+            return;
+        }
+
+        pubSubConnection.addListener(this);
+        pubSubConnection.sync().subscribe(CHANNEL);
+    }
+
+    // Returns null when neither tier knows the user.
+    public String getRole(String email) {
+        if (!enabled) {
+            return null;
+        }
+
+        String role = localCache.getIfPresent(email);
+        if (role != null) {
+            return role;
+        }
+
+        Object cached;
+        try {
+            cached = redisCommands.get(KEY_PREFIX + email);
+        }
+        catch (RedisException e) {
+            logger.warn("User details cache unavailable, loading from database: {}", e.toString());
+            cached = null;
+        }
+        if (cached == null) {
+            redisMisses.increment();
+            return null;
+        }
+
+        redisHits.increment();
+        role = cached.toString();
+        localCache.put(email, role);
+        return role;
+    }
+
+    public void put(String email, String role) {
+        if (!enabled) {
+            return;
+        }
+
+        localCache.put(email, role);
+        try {
+            redisCommands.setex(KEY_PREFIX + email, redisTtlSeconds, role);
+        }
+        catch (RedisException e) {
+            logger.warn("User details could not be cached in Redis: {}", e.toString());
+        }
+    }
+
+    // Drops the user from both tiers on this node and from the local tier of every other node.
+    public void evict(String email) {
+        localCache.invalidate(email);
+        if (!enabled) {
+            return;
+        }
+
+        logger.debug("Evicting cached user details.");
+        try {
+            redisCommands.del(KEY_PREFIX + email);
+            redisCommands.publish(CHANNEL, email);
+        }
+        catch (RedisException e) {
+            logger.warn("User details could not be evicted from Redis: {}", e.toString());
+        }
+    }
+
+    @Override
+    public void message(String channel, Object message) {
+        if (CHANNEL.equals(channel) && message != null) {
+            localCache.invalidate(message.toString());
+        }
+    }
+
+    @Override
+    public void subscribed(String channel, long count) {
+        if (CHANNEL.equals(channel)) {
+            // Evictions may have been missed while disconnected.
+            localCache.invalidateAll();
+        }
+    }
+}
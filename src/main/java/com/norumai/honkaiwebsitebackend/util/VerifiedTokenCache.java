@@ -0,0 +1,98 @@
+package com.norumai.honkaiwebsitebackend.util;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.norumai.honkaiwebsitebackend.service.JWTService;
+import io.lettuce.core.pubsub.RedisPubSubAdapter;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+// Tokens whose signature has already been verified, keyed by their SHA-256 digest.
+// A repeat request costs one hash lookup instead of a full parse, decode and MAC.
+@Component
+public class VerifiedTokenCache extends RedisPubSubAdapter<String, Object> {
+
+    private static final Logger logger = LoggerFactory.getLogger(VerifiedTokenCache.class);
+
+    private final StatefulRedisPubSubConnection<String, Object> pubSubConnection;
+    private final Cache<String, JWTService.VerifiedToken> cache;
+    private final boolean enabled;
+
+    @Autowired
+    public VerifiedTokenCache(StatefulRedisPubSubConnection<String, Object> pubSubConnection,
+                              MeterRegistry meterRegistry,
+                              @Value("${jwt.verified-cache.enabled:true}") boolean enabled,
+                              @Value("${jwt.verified-cache.maximum-size:100000}") long maximumSize) {
+        this.pubSubConnection = pubSubConnection;
+        this.enabled = enabled;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new Expiry<String, JWTService.VerifiedToken>() {
+                    // Each entry lives exactly until its token expires.
+                    @Override
+                    public long expireAfterCreate(String key, JWTService.VerifiedToken value, long currentTime) {
+                        long remainingMillis = value.expiration() == null
+                                ? 0 : value.expiration().getTime() - System.currentTimeMillis();
+                        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, remainingMillis));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, JWTService.VerifiedToken value, long currentTime,
+                                                  long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, JWTService.VerifiedToken value, long currentTime,
+                                                long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "jwt-verified");
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            logger.info("Verified token cache is disabled, every token will be fully verified.");
+            return;
+        }
+
+        // Revocations from other nodes drop the cached claims as well.
+        pubSubConnection.addListener(this);
+        pubSubConnection.sync().subscribe(BlacklistNearCache.CHANNEL);
+    }
+
+    public JWTService.VerifiedToken get(String hashedToken) {
+        return enabled ? cache.getIfPresent(hashedToken) : null;
+    }
+
+    public void put(String hashedToken, JWTService.VerifiedToken verifiedToken) {
+        if (enabled && verifiedToken.expiration() != null) {
+            cache.put(hashedToken, verifiedToken);
+        }
+    }
+
+    public void evict(String hashedToken) {
+        cache.invalidate(hashedToken);
+    }
+
+    @Override
+    public void message(String channel, Object message) {
+        if (BlacklistNearCache.CHANNEL.equals(channel) && message != null) {
+            evict(message.toString());
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.norumai.honkaiwebsitebackend.controller;
+
+import com.norumai.honkaiwebsitebackend.model.Role;
+import com.norumai.honkaiwebsitebackend.model.User;
+import com.norumai.honkaiwebsitebackend.repository.UserRepository;
+import com.norumai.honkaiwebsitebackend.service.JWTService;
+import jakarta.servlet.http.Cookie;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Runs against the real services (H2 and the local Redis), the role claim is checked the way a request sees it.
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class AdminControllerTest {
+
+    private final MockMvc mockMvc;
+    private final UserRepository userRepository;
+    private final JWTService jwtService;
+    private final TransactionTemplate transaction;
+
+    private final static Logger logger = LoggerFactory.getLogger(AdminControllerTest.class);
+
+    @Autowired
+    public AdminControllerTest(MockMvc mockMvc, UserRepository userRepository, JWTService jwtService,
+                               PlatformTransactionManager transactionManager) {
+        this.mockMvc = mockMvc;
+        this.userRepository = userRepository;
+        this.jwtService = jwtService;
+        this.transaction = new TransactionTemplate(transactionManager);
+    }
+
+    // Revokes the sessions of some other user, only the caller's role matters here.
+    private MockHttpServletRequestBuilder revokeRequest(String jwt) {
+        return post("/admin/sessions/revoke")
+                .cookie(new Cookie("jwt", jwt))
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"userIds\": [999999]}");
+    }
+
+    @Test
+    void revokeSessions_WithTokenOfDemotedAdmin_ShouldBeRejected() throws Exception {
+        User admin = new User();
+        admin.setUsername("demoted-admin");
+        admin.setEmail("demoted-admin@example.com");
+        admin.setPassword("{bcrypt}unused");
+        admin.setRole(Role.ADMIN);
+        Long adminId = userRepository.save(admin).getId();
+        String jwt = jwtService.generateToken(admin);
+
+        mockMvc.perform(revokeRequest(jwt))
+                .andExpect(status().isOk());
+
+        transaction.executeWithoutResult(status -> userRepository.findById(adminId).orElseThrow().setRole(Role.USER));
+
+        // The token still claims ADMIN, the revocation that came with the role change rejects it.
+        mockMvc.perform(revokeRequest(jwt))
+                .andExpect(status().isUnauthorized());
+        logger.info("Tested rejection of a demoted admin's token was successful.");
+    }
+}
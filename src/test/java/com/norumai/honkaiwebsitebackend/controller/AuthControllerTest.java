@@ -2,12 +2,24 @@ package com.norumai.honkaiwebsitebackend.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.norumai.honkaiwebsitebackend.dto.LoginRequest;
+import com.norumai.honkaiwebsitebackend.dto.RegisterRequest;
+import com.norumai.honkaiwebsitebackend.dto.UserSummary;
+import com.norumai.honkaiwebsitebackend.model.Role;
 import com.norumai.honkaiwebsitebackend.model.User;
+import com.norumai.honkaiwebsitebackend.model.UserPrincipal;
 import com.norumai.honkaiwebsitebackend.service.BlacklistTokenService;
 import com.norumai.honkaiwebsitebackend.service.CustomUserDetailsService;
 import com.norumai.honkaiwebsitebackend.service.JWTService;
+import com.norumai.honkaiwebsitebackend.service.RateLimitService;
+import com.norumai.honkaiwebsitebackend.service.RefreshTokenService;
+import com.norumai.honkaiwebsitebackend.service.SessionService;
 import com.norumai.honkaiwebsitebackend.service.UserService;
+import com.norumai.honkaiwebsitebackend.util.PasswordHashingRejectedException;
+import com.norumai.honkaiwebsitebackend.util.TokenHasher;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.servlet.http.Cookie;
+import org.hibernate.exception.ConstraintViolationException;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
 import org.slf4j.Logger;
@@ -15,8 +27,10 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.MediaType;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.test.context.ActiveProfiles;
@@ -24,13 +38,23 @@ import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 
+import java.sql.SQLException;
 import java.util.Collections;
-import java.util.Optional;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -41,11 +65,13 @@ public class AuthControllerTest {
 
     private MockMvc mockMvc;
     private ObjectMapper objectMapper;
+    private MeterRegistry meterRegistry;
 
     @Autowired
-    public AuthControllerTest(MockMvc mockMvc, ObjectMapper objectMapper) {
+    public AuthControllerTest(MockMvc mockMvc, ObjectMapper objectMapper, MeterRegistry meterRegistry) {
         this.mockMvc = mockMvc;
         this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
     }
 
     @Mock
@@ -66,23 +92,46 @@ public class AuthControllerTest {
     @MockitoBean
     private CustomUserDetailsService customUserDetailsService;
 
+    @MockitoBean
+    private SessionService sessionService;
+
+    @MockitoBean
+    private RefreshTokenService refreshTokenService;
+
+    @MockitoBean
+    private RateLimitService rateLimitService;
+
     private final static Logger logger = LoggerFactory.getLogger(AuthControllerTest.class);
 
+    @BeforeEach
+    void setUp() {
+        when(rateLimitService.tryAcquire(any(RateLimitService.Scope.class), anyString()))
+                .thenReturn(RateLimitService.Decision.ALLOWED);
+    }
+
     @Test
     void login_WithValidCredentials() throws Exception {
         User user = new User();
         user.setUsername("testuser");
         user.setEmail("test@example.com");
+        user.setPassword("hashedPassword");
 
         LoginRequest loginRequest = new LoginRequest();
         loginRequest.setUserInput("test@example.com"); // Username or email can be used.
         loginRequest.setPassword("password123");
 
-        when(userService.findByEmail("test@example.com")).thenReturn(Optional.of(user));
-        when(userService.findByUsername("testuser")).thenReturn(Optional.of(user));
+        // User entity loaded during authentication is reused, no further lookups.
+        UserPrincipal userPrincipal = new UserPrincipal(user);
+        when(authenticationManager.authenticate(any(UsernamePasswordAuthenticationToken.class)))
+                .thenReturn(new UsernamePasswordAuthenticationToken(userPrincipal, null, userPrincipal.getAuthorities()));
         when(jwtService.generateToken(user)).thenReturn("mock.jwt.token");
+        when(jwtService.getAccessTokenTtlSeconds()).thenReturn(900L);
+        when(refreshTokenService.issue(user)).thenReturn("family.secret");
+        when(refreshTokenService.getTtlSeconds()).thenReturn(1209600L);
 
+        // A leftover access token is not looked at, login is a public route.
         MvcResult result = mockMvc.perform(post("/auth/login")
+                .cookie(new Cookie("jwt", "old.jwt.token"))
                 .contentType(MediaType.APPLICATION_JSON)
                 .content(objectMapper.writeValueAsString(loginRequest)))
                 .andExpect(status().isOk())
@@ -95,10 +144,22 @@ public class AuthControllerTest {
         Cookie jwtCookie = result.getResponse().getCookie("jwt");
         assertThat(jwtCookie).isNotNull();
         assertThat(jwtCookie.getValue()).isEqualTo("mock.jwt.token");
-        assertThat(jwtCookie.getMaxAge()).isEqualTo(7200);
+        assertThat(jwtCookie.getMaxAge()).isEqualTo(900);
         assertThat(jwtCookie.isHttpOnly()).isTrue();
         assertThat(jwtCookie.getSecure()).isTrue();
 
+        Cookie refreshCookie = result.getResponse().getCookie("refresh");
+        assertThat(refreshCookie).isNotNull();
+        assertThat(refreshCookie.getValue()).isEqualTo("family.secret");
+        assertThat(refreshCookie.getPath()).isEqualTo("/auth");
+        assertThat(refreshCookie.isHttpOnly()).isTrue();
+
+        verify(userService, never()).findByEmail(any());
+        verify(userService, never()).findByUsername(any());
+        verify(userService, never()).findByEmailOrUsername(any());
+        verify(sessionService).trackSession(user, "mock.jwt.token");
+        verify(jwtService, never()).verifyToken(anyString(), anyString());
+        verify(blacklistTokenService, never()).isHashedTokenBlacklistedAsync(anyString());
         logger.info("Tested login method was successful.");
     }
 
@@ -115,8 +176,13 @@ public class AuthControllerTest {
                 authorities
         );
 
-        when(customUserDetailsService.loadUserByUsername(email)).thenReturn(userDetails);
-        when(jwtService.validateToken("mock.jwt.token", userDetails)).thenReturn(true);
+        String hashedToken = TokenHasher.hash("mock.jwt.token");
+        when(blacklistTokenService.isHashedTokenBlacklistedAsync(hashedToken))
+                .thenReturn(CompletableFuture.completedFuture(false));
+        JWTService.VerifiedToken verifiedToken = new JWTService.VerifiedToken(email, null, null);
+        when(jwtService.verifyToken("mock.jwt.token", hashedToken)).thenReturn(verifiedToken);
+        when(customUserDetailsService.loadUserByEmail(email)).thenReturn(userDetails);
+        when(jwtService.validateToken(verifiedToken, userDetails)).thenReturn(true);
 
         MvcResult result = mockMvc.perform(post("/auth/logout")
                 .cookie(jwtCookie))
@@ -127,4 +193,237 @@ public class AuthControllerTest {
         verify(blacklistTokenService).blacklistToken("mock.jwt.token", "test@example.com");
         logger.info("Tested logout method was successful.");
     }
+
+    @Test
+    void request_WithBlacklistedToken_RecordsFilterStages() throws Exception {
+        String hashedToken = TokenHasher.hash("blacklisted.jwt.token");
+        when(blacklistTokenService.isHashedTokenBlacklistedAsync(hashedToken))
+                .thenReturn(CompletableFuture.completedFuture(true));
+        when(jwtService.verifyToken("blacklisted.jwt.token", hashedToken))
+                .thenReturn(new JWTService.VerifiedToken("test@example.com", null, null));
+        long before = meterRegistry.timer("jwt.filter.requests", "outcome", "blacklisted").count();
+
+        // Read from the raw header, between other cookies.
+        mockMvc.perform(get("/auth/users")
+                .header("Cookie", "theme=dark; jwt=blacklisted.jwt.token; refresh=family.secret"))
+                .andExpect(status().isUnauthorized());
+
+        assertThat(meterRegistry.timer("jwt.filter.requests", "outcome", "blacklisted").count()).isEqualTo(before + 1);
+        assertThat(meterRegistry.get("jwt.filter.stage").tag("stage", "blacklist").tag("outcome", "blacklisted")
+                .timer().count()).isPositive();
+        assertThat(meterRegistry.get("jwt.filter.stage").tag("stage", "parse").tag("outcome", "valid")
+                .timer().count()).isPositive();
+        verify(customUserDetailsService, never()).loadUserByEmail(any());
+        logger.info("Tested filter stage metrics was successful.");
+    }
+
+    @Test
+    void logoutAll_RevokeEverySessionOfTheUser() throws Exception {
+        Cookie jwtCookie = new Cookie("jwt", "mock.jwt.token");
+        String email = "test@example.com";
+        UserDetails userDetails = new org.springframework.security.core.userdetails.User(
+                email,
+                "password123",
+                Collections.singletonList(new SimpleGrantedAuthority("ROLE_USER"))
+        );
+
+        String hashedToken = TokenHasher.hash("mock.jwt.token");
+        when(blacklistTokenService.isHashedTokenBlacklistedAsync(hashedToken))
+                .thenReturn(CompletableFuture.completedFuture(false));
+        JWTService.VerifiedToken verifiedToken = new JWTService.VerifiedToken(email, null, null);
+        when(jwtService.verifyToken("mock.jwt.token", hashedToken)).thenReturn(verifiedToken);
+        when(jwtService.verifyToken("mock.jwt.token")).thenReturn(verifiedToken);
+        when(jwtService.extractUserId(verifiedToken)).thenReturn(42L);
+        when(customUserDetailsService.loadUserByEmail(email)).thenReturn(userDetails);
+        when(jwtService.validateToken(verifiedToken, userDetails)).thenReturn(true);
+        when(sessionService.revokeAllSessions(List.of(42L))).thenReturn(3);
+
+        mockMvc.perform(post("/auth/logout-all")
+                .cookie(jwtCookie))
+                .andExpect(status().isOk())
+                .andExpect(cookie().maxAge("jwt", 0));
+
+        verify(sessionService).revokeAllSessions(List.of(42L));
+        verify(userService, never()).findByEmail(any());
+        logger.info("Tested logout of all sessions was successful.");
+    }
+
+    @Test
+    void refresh_ShouldRotateWithoutPasswordCheck() throws Exception {
+        User user = new User();
+        user.setId(42L);
+        user.setEmail("test@example.com");
+        when(refreshTokenService.rotate("family.secret"))
+                .thenReturn(new RefreshTokenService.Rotation(RefreshTokenService.Status.ROTATED, "family.newsecret", user));
+        when(jwtService.generateToken(user)).thenReturn("new.jwt.token");
+        when(jwtService.getAccessTokenTtlSeconds()).thenReturn(900L);
+
+        // An expired access token is still sent along, the refresh endpoint is not filtered.
+        mockMvc.perform(post("/auth/refresh")
+                .cookie(new Cookie("jwt", "expired.jwt.token"), new Cookie("refresh", "family.secret")))
+                .andExpect(status().isOk())
+                .andExpect(cookie().value("jwt", "new.jwt.token"))
+                .andExpect(cookie().value("refresh", "family.newsecret"));
+
+        verify(authenticationManager, never()).authenticate(any());
+        verify(userService, never()).findByEmail(any());
+        verify(sessionService).trackSession(user, "new.jwt.token");
+        logger.info("Tested refresh method was successful.");
+    }
+
+    @Test
+    void refresh_WithReusedToken() throws Exception {
+        when(refreshTokenService.rotate("family.secret"))
+                .thenReturn(new RefreshTokenService.Rotation(RefreshTokenService.Status.REUSED, null, null));
+
+        mockMvc.perform(post("/auth/refresh")
+                .cookie(new Cookie("refresh", "family.secret")))
+                .andExpect(status().isUnauthorized())
+                .andExpect(cookie().maxAge("refresh", 0));
+
+        verify(jwtService, never()).generateToken(any());
+        logger.info("Tested refresh with a reused token was successful.");
+    }
+
+    @Test
+    void register_WithExistingCredentials() throws Exception {
+        // Duplicates are rejected by the unique constraints on insert instead of lookups beforehand.
+        SQLException duplicateEntry = new SQLException("Duplicate entry 'testuser' for key 'Username'", "23000", 1062);
+        when(userService.createUser(any(RegisterRequest.class)))
+                .thenThrow(new DataIntegrityViolationException("could not execute statement",
+                        new ConstraintViolationException("could not execute statement", duplicateEntry,
+                                ConstraintViolationException.ConstraintKind.UNIQUE, "Username")));
+
+        mockMvc.perform(multipart("/auth/register")
+                .param("username", "testuser")
+                .param("email", "test@example.com")
+                .param("password", "password123"))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("Registration failed. Please try with different credentials."));
+
+        verify(userService, never()).findByEmail(any());
+        verify(userService, never()).findByUsername(any());
+        logger.info("Tested registration with existing credentials was successful.");
+    }
+
+    @Test
+    void register_WhenOtherConstraintViolated() throws Exception {
+        // Not an existing account, telling the user to pick other credentials would be misleading.
+        SQLException valueTooLong = new SQLException("Value too long for column \"BIO\"", "22001", 22001);
+        when(userService.createUser(any(RegisterRequest.class)))
+                .thenThrow(new DataIntegrityViolationException("could not execute statement", valueTooLong));
+
+        mockMvc.perform(multipart("/auth/register")
+                .param("username", "testuser")
+                .param("email", "test@example.com")
+                .param("password", "password123")
+                .param("bio", "x".repeat(600)))
+                .andExpect(status().isInternalServerError())
+                .andExpect(content().string("Registration could not be completed. Please try again later."));
+
+        logger.info("Tested registration rejected by another constraint was successful.");
+    }
+
+    @Test
+    void login_WhenPasswordHashingSaturated() throws Exception {
+        LoginRequest loginRequest = new LoginRequest();
+        loginRequest.setUserInput("test@example.com");
+        loginRequest.setPassword("password123");
+
+        when(authenticationManager.authenticate(any(UsernamePasswordAuthenticationToken.class)))
+                .thenThrow(new PasswordHashingRejectedException(1));
+
+        mockMvc.perform(post("/auth/login")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(loginRequest)))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "1"))
+                .andExpect(cookie().doesNotExist("jwt"));
+
+        logger.info("Tested login backpressure was successful.");
+    }
+
+    @Test
+    void login_WhenAccountIsRateLimited() throws Exception {
+        LoginRequest loginRequest = new LoginRequest();
+        loginRequest.setUserInput("test@example.com");
+        loginRequest.setPassword("password123");
+
+        when(rateLimitService.tryAcquire(RateLimitService.Scope.USERNAME, "test@example.com"))
+                .thenReturn(new RateLimitService.Decision(false, 30));
+
+        mockMvc.perform(post("/auth/login")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(loginRequest)))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "30"))
+                .andExpect(cookie().doesNotExist("jwt"));
+
+        // Rejected before the password is ever hashed.
+        verify(authenticationManager, never()).authenticate(any());
+        logger.info("Tested login rate limit per account was successful.");
+    }
+
+    @Test
+    void login_WhenAddressIsRateLimited() throws Exception {
+        LoginRequest loginRequest = new LoginRequest();
+        loginRequest.setUserInput("test@example.com");
+        loginRequest.setPassword("password123");
+
+        when(rateLimitService.tryAcquire(eq(RateLimitService.Scope.IP), anyString()))
+                .thenReturn(new RateLimitService.Decision(false, 5));
+
+        mockMvc.perform(post("/auth/login")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(loginRequest)))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "5"));
+
+        verify(rateLimitService, never()).tryAcquire(eq(RateLimitService.Scope.USERNAME), anyString());
+        verify(authenticationManager, never()).authenticate(any());
+        logger.info("Tested login rate limit per address was successful.");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void streamAllUsers_WritesOneJsonObjectPerLine() throws Exception {
+        Cookie jwtCookie = new Cookie("jwt", "mock.jwt.token");
+        String email = "test@example.com";
+        UserDetails userDetails = new org.springframework.security.core.userdetails.User(
+                email,
+                "password123",
+                Collections.singletonList(new SimpleGrantedAuthority("ROLE_USER"))
+        );
+
+        String hashedToken = TokenHasher.hash("mock.jwt.token");
+        when(blacklistTokenService.isHashedTokenBlacklistedAsync(hashedToken))
+                .thenReturn(CompletableFuture.completedFuture(false));
+        JWTService.VerifiedToken verifiedToken = new JWTService.VerifiedToken(email, null, null);
+        when(jwtService.verifyToken("mock.jwt.token", hashedToken)).thenReturn(verifiedToken);
+        when(customUserDetailsService.loadUserByEmail(email)).thenReturn(userDetails);
+        when(jwtService.validateToken(verifiedToken, userDetails)).thenReturn(true);
+        doAnswer(invocation -> {
+            Consumer<UserSummary> action = invocation.getArgument(0);
+            action.accept(new UserSummary(1L, "first", "first@example.com", Role.USER, null, null));
+            action.accept(new UserSummary(2L, "second", "second@example.com", Role.ADMIN, "bio", null));
+            return null;
+        }).when(userService).forEachUser(any(Consumer.class));
+
+        MvcResult result = mockMvc.perform(get("/auth/users/stream")
+                .cookie(jwtCookie))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String body = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andReturn().getResponse().getContentAsString();
+
+        String[] lines = body.split("\n");
+        assertThat(lines).hasSize(2);
+        assertThat(objectMapper.readTree(lines[0]).get("username").asText()).isEqualTo("first");
+        assertThat(objectMapper.readTree(lines[1]).get("role").asText()).isEqualTo("ADMIN");
+        assertThat(body).doesNotContain("password");
+        logger.info("Tested streaming all users was successful.");
+    }
 }
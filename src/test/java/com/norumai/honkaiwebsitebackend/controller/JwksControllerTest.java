@@ -0,0 +1,88 @@
+package com.norumai.honkaiwebsitebackend.controller;
+
+import com.norumai.honkaiwebsitebackend.util.FileJwtKeyManager;
+import com.norumai.honkaiwebsitebackend.util.JwtKeyManager;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class JwksControllerTest {
+
+    private final MockMvc mockMvc;
+    private final JwtKeyManager keyManager;
+
+    @TempDir
+    private Path keyDirectory;
+
+    private final static Logger logger = LoggerFactory.getLogger(JwksControllerTest.class);
+
+    @Autowired
+    public JwksControllerTest(MockMvc mockMvc, JwtKeyManager keyManager) {
+        this.mockMvc = mockMvc;
+        this.keyManager = keyManager;
+    }
+
+    @Test
+    void jwks_ShouldPublishPublicSigningKeyWithoutAuthentication() throws Exception {
+        JwtKeyManager.ManagedKey signingKey = keyManager.signingKey();
+
+        mockMvc.perform(get("/.well-known/jwks.json"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=300, public"))
+                .andExpect(jsonPath("$.keys", hasSize(keyManager.publishedKeys().size())))
+                .andExpect(jsonPath("$.keys[?(@.kid == '" + signingKey.kid() + "')].alg").value("EdDSA"))
+                .andExpect(jsonPath("$.keys[?(@.kid == '" + signingKey.kid() + "')].use").value("sig"))
+                .andExpect(jsonPath("$.keys[?(@.kid == '" + signingKey.kid() + "')].kty").value("OKP"))
+                .andExpect(jsonPath("$.keys[?(@.kid == '" + signingKey.kid() + "')].crv").value("Ed25519"))
+                .andExpect(jsonPath("$.keys[?(@.kid == '" + signingKey.kid() + "')].x").exists())
+                // Only the public half is ever published.
+                .andExpect(jsonPath("$.keys[*].d").doesNotExist());
+        logger.info("Tested publishing the JWKS was successful.");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void jwks_ShouldPublishPendingKeyDuringActivationDelay() {
+        // Due for rotation at once, the successor is published but does not sign yet.
+        FileJwtKeyManager rotatingKeyManager = new FileJwtKeyManager(keyDirectory.toString(), "ES256", 0, 300, 0, 900);
+        String signingKid = rotatingKeyManager.signingKey().kid();
+        JwksController jwksController = new JwksController(rotatingKeyManager, 120);
+
+        ResponseEntity<?> response = jwksController.jwks();
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getHeaders().getCacheControl()).isEqualTo("max-age=120, public");
+        List<Map<String, Object>> keys = ((Map<String, List<Map<String, Object>>>) response.getBody()).get("keys");
+        assertThat(keys).hasSize(2);
+        assertThat(keys).extracting(key -> key.get("kid")).contains(signingKid);
+        assertThat(keys).allSatisfy(key -> {
+            assertThat(key).containsEntry("alg", "ES256").containsEntry("kty", "EC").containsEntry("use", "sig")
+                    .containsEntry("crv", "P-256").containsKeys("x", "y").doesNotContainKey("d");
+        });
+        assertThat(rotatingKeyManager.signingKey().kid()).isEqualTo(signingKid);
+        logger.info("Tested publishing a pending JWT key was successful.");
+    }
+}
@@ -0,0 +1,132 @@
+package com.norumai.honkaiwebsitebackend.model;
+
+import com.norumai.honkaiwebsitebackend.repository.UserRepository;
+import com.norumai.honkaiwebsitebackend.service.SessionService;
+import com.norumai.honkaiwebsitebackend.util.UserDetailsCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+// Runs the real JPA callbacks, every change commits (or rolls back) in its own transaction.
+@DataJpaTest
+@ActiveProfiles("test")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class UserChangeListenerTest {
+
+    @MockitoBean
+    private UserDetailsCache userDetailsCache;
+
+    @MockitoBean
+    private SessionService sessionService;
+
+    private final UserRepository userRepository;
+    private final TransactionTemplate transaction;
+    private Long userId;
+
+    private final static Logger logger = LoggerFactory.getLogger(UserChangeListenerTest.class);
+
+    @Autowired
+    public UserChangeListenerTest(UserRepository userRepository, PlatformTransactionManager transactionManager) {
+        this.userRepository = userRepository;
+        this.transaction = new TransactionTemplate(transactionManager);
+    }
+
+    @BeforeEach
+    void setUp() {
+        userRepository.deleteAll();
+        User user = new User();
+        user.setUsername("testuser");
+        user.setEmail("old@example.com");
+        user.setPassword("{bcrypt}unused");
+        userId = userRepository.save(user).getId();
+        clearInvocations(userDetailsCache, sessionService);
+    }
+
+    @Test
+    void emailChange_ShouldEvictOldAndNewEmailAfterCommit() {
+        transaction.executeWithoutResult(status -> {
+            User user = userRepository.findById(userId).orElseThrow();
+            user.setEmail("new@example.com");
+            userRepository.flush();
+            // Flushed, but a concurrent request could still read and cache the old row until the commit.
+            verify(userDetailsCache, never()).evict(anyString());
+        });
+
+        verify(userDetailsCache).evict("new@example.com");
+        verify(userDetailsCache).evict("old@example.com");
+        verify(sessionService, never()).revokeAllSessions(anyCollection());
+        logger.info("Tested eviction of the previous email after an email change was successful.");
+    }
+
+    @Test
+    void roleChange_ShouldEvictOnlyCurrentEmail() {
+        transaction.executeWithoutResult(status -> {
+            User user = userRepository.findById(userId).orElseThrow();
+            user.setRole(Role.ADMIN);
+        });
+
+        verify(userDetailsCache).evict("old@example.com");
+        verify(userDetailsCache, never()).evict("new@example.com");
+        logger.info("Tested eviction after a role change was successful.");
+    }
+
+    @Test
+    void demotion_ShouldRevokeSessionsAfterCommit() {
+        transaction.executeWithoutResult(status -> {
+            User user = userRepository.findById(userId).orElseThrow();
+            user.setRole(Role.ADMIN);
+        });
+        clearInvocations(sessionService);
+
+        transaction.executeWithoutResult(status -> {
+            User user = userRepository.findById(userId).orElseThrow();
+            user.setRole(Role.USER);
+            userRepository.flush();
+            verify(sessionService, never()).revokeAllSessions(anyCollection());
+        });
+
+        // Tokens still claiming ADMIN end with the watermark set by the revocation.
+        verify(sessionService).revokeAllSessions(List.of(userId));
+        logger.info("Tested session revocation after a demotion was successful.");
+    }
+
+    @Test
+    void rolledBackChange_ShouldNotEvict() {
+        transaction.executeWithoutResult(status -> {
+            User user = userRepository.findById(userId).orElseThrow();
+            user.setEmail("new@example.com");
+            user.setRole(Role.ADMIN);
+            userRepository.flush();
+            status.setRollbackOnly();
+        });
+
+        verify(userDetailsCache, never()).evict(anyString());
+        verify(sessionService, never()).revokeAllSessions(anyCollection());
+        logger.info("Tested no eviction after a rollback was successful.");
+    }
+
+    @Test
+    void delete_ShouldEvict() {
+        userRepository.deleteById(userId);
+
+        verify(userDetailsCache).evict("old@example.com");
+        logger.info("Tested eviction after deleting a user was successful.");
+    }
+}
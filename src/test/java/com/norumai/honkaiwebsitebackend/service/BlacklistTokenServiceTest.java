@@ -0,0 +1,322 @@
+package com.norumai.honkaiwebsitebackend.service;
+
+import com.norumai.honkaiwebsitebackend.util.BlacklistBloomFilter;
+import com.norumai.honkaiwebsitebackend.util.BlacklistNearCache;
+import com.norumai.honkaiwebsitebackend.util.BlacklistUnavailableException;
+import com.norumai.honkaiwebsitebackend.util.RecentRevocations;
+import com.norumai.honkaiwebsitebackend.util.RevocationWatermarks;
+import com.norumai.honkaiwebsitebackend.util.TokenHasher;
+import com.norumai.honkaiwebsitebackend.util.VerifiedTokenCache;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.lettuce.core.KeyScanCursor;
+import io.lettuce.core.RedisChannelHandler;
+import io.lettuce.core.RedisConnectionException;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.ScanArgs;
+import io.lettuce.core.ScanCursor;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.codec.RedisCodec;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class BlacklistTokenServiceTest {
+
+    @Mock
+    private RedisCommands<String, Object> redisCommands;
+
+    @Mock
+    private RedisAsyncCommands<String, Object> redisAsyncCommands;
+
+    @Mock
+    private StatefulRedisPubSubConnection<String, Object> pubSubConnection;
+
+    @Mock
+    private RedisCodec<String, Object> redisCodec;
+
+    private BlacklistNearCache nearCache;
+    private BlacklistBloomFilter bloomFilter;
+    private VerifiedTokenCache verifiedTokenCache;
+    private RecentRevocations recentRevocations;
+    private RevocationWatermarks revocationWatermarks;
+    private BlacklistTokenService blacklistTokenService;
+
+    private final static Logger logger = LoggerFactory.getLogger(BlacklistTokenServiceTest.class);
+
+    // Enabled Bloom filter, rebuilt from a SCAN that finds the given revoked tokens once it is subscribed.
+    private BlacklistBloomFilter enabledBloomFilter(SimpleMeterRegistry meterRegistry, String... revokedTokens) {
+        when(redisCodec.encodeKey(BlacklistTokenService.KEY_PREFIX + "*"))
+                .thenReturn(ByteBuffer.wrap((BlacklistTokenService.KEY_PREFIX + "*").getBytes(StandardCharsets.UTF_8)));
+        KeyScanCursor<String> scanResult = new KeyScanCursor<>();
+        for (String token : revokedTokens) {
+            scanResult.getKeys().add(BlacklistTokenService.KEY_PREFIX + TokenHasher.hash(token));
+        }
+        scanResult.setFinished(true);
+        when(redisCommands.scan(any(ScanCursor.class), any(ScanArgs.class))).thenReturn(scanResult);
+        return new BlacklistBloomFilter(pubSubConnection, redisCommands, redisCodec, meterRegistry, true, 1000, 0.01, 900);
+    }
+
+    private void subscribe(BlacklistBloomFilter bloomFilter) {
+        bloomFilter.subscribed(BlacklistNearCache.CHANNEL, 1);
+        await().atMost(Duration.ofSeconds(5)).until(bloomFilter::isReady);
+    }
+
+    @BeforeEach
+    void setUp() {
+        nearCache = new BlacklistNearCache(pubSubConnection, new SimpleMeterRegistry(), true, 1000, 900);
+        bloomFilter = new BlacklistBloomFilter(pubSubConnection, redisCommands, redisCodec,
+                new SimpleMeterRegistry(), false, 1000, 0.01, 900);
+        verifiedTokenCache = new VerifiedTokenCache(pubSubConnection, new SimpleMeterRegistry(), true, 1000);
+        recentRevocations = new RecentRevocations(pubSubConnection, new SimpleMeterRegistry(), 1000, 900);
+        revocationWatermarks = new RevocationWatermarks(pubSubConnection, new SimpleMeterRegistry(), 1000, 1209600);
+        blacklistTokenService = newService("fail-open");
+    }
+
+    // Standalone setup, reads and writes share the same connection.
+    private BlacklistTokenService newService(String redisOutagePolicy) {
+        return new BlacklistTokenService(redisCommands, redisAsyncCommands, redisCommands, redisAsyncCommands,
+                nearCache, bloomFilter, verifiedTokenCache, recentRevocations, revocationWatermarks,
+                CircuitBreakerRegistry.ofDefaults(),
+                new SimpleMeterRegistry(), redisOutagePolicy, 500, 900, 1209600);
+    }
+
+    @Test
+    void isTokenBlacklisted_ShouldAskRedisUntilSubscribed() {
+        when(redisCommands.exists(anyString())).thenReturn(0L);
+
+        assertThat(blacklistTokenService.isTokenBlacklisted("a.b.c")).isFalse();
+        assertThat(blacklistTokenService.isTokenBlacklisted("a.b.c")).isFalse();
+
+        verify(redisCommands, times(2)).exists(anyString());
+        logger.info("Tested lookups without a subscription were successful.");
+    }
+
+    @Test
+    void isTokenBlacklisted_ShouldAnswerFromMemoryOnceSynced() {
+        nearCache.subscribed(BlacklistNearCache.CHANNEL, 1);
+        when(redisCommands.exists(anyString())).thenReturn(0L);
+
+        assertThat(blacklistTokenService.isTokenBlacklisted("a.b.c")).isFalse();
+        assertThat(blacklistTokenService.isTokenBlacklisted("a.b.c")).isFalse();
+
+        verify(redisCommands, times(1)).exists(anyString());
+        logger.info("Tested near-cache hit was successful.");
+    }
+
+    @Test
+    void blacklistToken_ShouldPublishAndOverrideCachedAnswer() {
+        nearCache.subscribed(BlacklistNearCache.CHANNEL, 1);
+        when(redisCommands.exists(anyString())).thenReturn(0L);
+        assertThat(blacklistTokenService.isTokenBlacklisted("a.b.c")).isFalse();
+
+        blacklistTokenService.blacklistToken("a.b.c", "test@example.com");
+
+        assertThat(blacklistTokenService.isTokenBlacklisted("a.b.c")).isTrue();
+        verify(redisAsyncCommands).publish(eq(BlacklistNearCache.CHANNEL), anyString());
+        verify(redisCommands, times(1)).exists(anyString());
+        logger.info("Tested blacklisting a cached token was successful.");
+    }
+
+    @Test
+    void blacklistToken_ShouldEvictVerifiedToken() {
+        String hashedToken = TokenHasher.hash("a.b.c");
+        verifiedTokenCache.put(hashedToken, new JWTService.VerifiedToken("test@example.com",
+                new Date(System.currentTimeMillis() + 60_000), null));
+
+        blacklistTokenService.blacklistToken("a.b.c", "test@example.com");
+
+        // Otherwise this node would keep skipping the signature check for a logged out token until it expires.
+        assertThat(verifiedTokenCache.get(hashedToken)).isNull();
+        logger.info("Tested verified token eviction on blacklisting was successful.");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void isTokenBlacklistedAsync_ShouldUseAsyncCommandsAndCacheAnswer() {
+        nearCache.subscribed(BlacklistNearCache.CHANNEL, 1);
+        RedisFuture<Long> existsFuture = mock(RedisFuture.class);
+        when(existsFuture.toCompletableFuture()).thenReturn(CompletableFuture.completedFuture(1L));
+        when(redisAsyncCommands.exists(anyString())).thenReturn(existsFuture);
+
+        assertThat(blacklistTokenService.isTokenBlacklistedAsync("a.b.c").join()).isTrue();
+        assertThat(blacklistTokenService.isTokenBlacklistedAsync("a.b.c").join()).isTrue();
+
+        verify(redisAsyncCommands, times(1)).exists(anyString());
+        verify(redisCommands, never()).exists(anyString());
+        logger.info("Tested async blacklist lookup was successful.");
+    }
+
+    @Test
+    void disconnect_ShouldDropCachedAnswers() {
+        nearCache.subscribed(BlacklistNearCache.CHANNEL, 1);
+        nearCache.markBlacklisted("somehash");
+
+        nearCache.onRedisDisconnected(mock(RedisChannelHandler.class));
+
+        assertThat(nearCache.lookup("somehash")).isNull();
+        verify(redisCommands, never()).exists(anyString());
+        logger.info("Tested near-cache invalidation on disconnect was successful.");
+    }
+
+    @Test
+    void isTokenBlacklisted_ShouldFailOpenExceptForRecentRevocations() {
+        when(redisCommands.exists(anyString())).thenThrow(new RedisConnectionException("Connection refused"));
+        when(redisCommands.setex(anyString(), anyLong(), any())).thenThrow(new RedisConnectionException("Connection refused"));
+
+        // Revoked on this node while Redis was already down.
+        assertThatThrownBy(() -> blacklistTokenService.blacklistToken("a.b.c", "test@example.com"))
+                .isInstanceOf(RedisConnectionException.class);
+
+        assertThat(blacklistTokenService.isTokenBlacklisted("a.b.c")).isTrue();
+        assertThat(blacklistTokenService.isTokenBlacklisted("d.e.f")).isFalse();
+        logger.info("Tested fail-open fallback was successful.");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void isTokenBlacklistedAsync_ShouldFailClosedWhenRedisIsDown() {
+        BlacklistTokenService failClosedService = newService("fail-closed");
+        RedisFuture<Long> existsFuture = mock(RedisFuture.class);
+        when(existsFuture.toCompletableFuture())
+                .thenReturn(CompletableFuture.failedFuture(new RedisConnectionException("Connection refused")));
+        when(redisAsyncCommands.exists(anyString())).thenReturn(existsFuture);
+
+        assertThatThrownBy(() -> failClosedService.isTokenBlacklistedAsync("a.b.c").join())
+                .hasCauseInstanceOf(BlacklistUnavailableException.class);
+        logger.info("Tested fail-closed fallback was successful.");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void isRevokedByWatermark_ShouldRejectTokensIssuedUpToTheWatermarkSecond() {
+        revocationWatermarks.subscribed(RevocationWatermarks.CHANNEL, 1);
+        RedisFuture<Object> getFuture = mock(RedisFuture.class);
+        when(getFuture.toCompletableFuture()).thenReturn(CompletableFuture.completedFuture(null));
+        when(redisAsyncCommands.get(BlacklistTokenService.WATERMARK_KEY_PREFIX + 1)).thenReturn(getFuture);
+        RedisFuture<String> setFuture = mock(RedisFuture.class);
+        when(setFuture.toCompletableFuture()).thenReturn(CompletableFuture.completedFuture("OK"));
+        when(redisAsyncCommands.set(anyString(), any(), any())).thenReturn(setFuture);
+        RedisFuture<Long> publishFuture = mock(RedisFuture.class);
+        when(publishFuture.toCompletableFuture()).thenReturn(CompletableFuture.completedFuture(1L));
+        when(redisAsyncCommands.publish(anyString(), any())).thenReturn(publishFuture);
+
+        long now = System.currentTimeMillis();
+        assertThat(blacklistTokenService.isRevokedByWatermark(1L, new Date(now - 10_000))).isFalse();
+
+        blacklistTokenService.revokeIssuedBeforeAsync(1L, now / 1000).join();
+
+        assertThat(blacklistTokenService.isRevokedByWatermark(1L, new Date(now - 10_000))).isTrue();
+        // Issued within the watermark's second, possibly just before the revocation.
+        assertThat(blacklistTokenService.isRevokedByWatermark(1L, new Date(now / 1000 * 1000))).isTrue();
+        assertThat(blacklistTokenService.isRevokedByWatermark(1L, new Date(now / 1000 * 1000 + 999))).isTrue();
+        assertThat(blacklistTokenService.isRevokedByWatermark(1L, new Date((now / 1000 + 1) * 1000))).isFalse();
+        assertThat(blacklistTokenService.isRevokedByWatermark(null, new Date(now - 10_000))).isFalse();
+        verify(redisAsyncCommands, times(1)).get(anyString());
+        verify(redisCommands, never()).get(anyString());
+        verify(redisAsyncCommands).publish(RevocationWatermarks.CHANNEL, "1:" + now / 1000);
+        logger.info("Tested revocation watermark was successful.");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void revokedBefore_ShouldGiveUpAfterLookupTimeout() {
+        // Redis accepted the command but never answers.
+        RedisFuture<Object> getFuture = mock(RedisFuture.class);
+        when(getFuture.toCompletableFuture()).thenAnswer(invocation -> new CompletableFuture<>());
+        when(redisAsyncCommands.get(BlacklistTokenService.WATERMARK_KEY_PREFIX + 1)).thenReturn(getFuture);
+        BlacklistTokenService failClosedService = newService("fail-closed");
+
+        long start = System.nanoTime();
+        assertThat(blacklistTokenService.revokedBefore(1L)).isZero();
+        assertThatThrownBy(() -> failClosedService.revokedBefore(1L))
+                .isInstanceOf(BlacklistUnavailableException.class);
+
+        // Two lookups of 500 ms each, far below redis.timeout.
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(3));
+        verify(redisCommands, never()).get(anyString());
+        logger.info("Tested watermark lookup timeout was successful.");
+    }
+
+    @Test
+    void isTokenBlacklisted_WithBloomFilter_ShouldSkipRedisForUnseenTokens() {
+        bloomFilter = enabledBloomFilter(new SimpleMeterRegistry(), "revoked.token");
+        blacklistTokenService = newService("fail-open");
+        when(redisCommands.exists(anyString())).thenReturn(0L);
+        when(redisCommands.exists(BlacklistTokenService.KEY_PREFIX + TokenHasher.hash("revoked.token"))).thenReturn(1L);
+
+        // Not rebuilt from Redis yet, so the filter may be missing revocations and is not consulted.
+        assertThat(blacklistTokenService.isTokenBlacklisted("a.b.c")).isFalse();
+        verify(redisCommands, times(1)).exists(anyString());
+
+        subscribe(bloomFilter);
+
+        assertThat(blacklistTokenService.isTokenBlacklisted("a.b.c")).isFalse();
+        assertThat(blacklistTokenService.isTokenBlacklisted("d.e.f")).isFalse();
+        verify(redisCommands, times(1)).exists(anyString());
+        // Loaded by the SCAN, confirmed with Redis.
+        assertThat(blacklistTokenService.isTokenBlacklisted("revoked.token")).isTrue();
+        verify(redisCommands, times(2)).exists(anyString());
+        logger.info("Tested Bloom filter short-circuit after the SCAN rebuild was successful.");
+    }
+
+    @Test
+    void isTokenBlacklisted_WithBloomFilter_ShouldReportFalsePositives() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        bloomFilter = enabledBloomFilter(meterRegistry);
+        blacklistTokenService = newService("fail-open");
+        subscribe(bloomFilter);
+        // In the filter, but the Redis entry is gone, e.g. it expired together with the token.
+        bloomFilter.add(TokenHasher.hash("a.b.c"));
+        when(redisCommands.exists(anyString())).thenReturn(0L);
+
+        assertThat(blacklistTokenService.isTokenBlacklisted("a.b.c")).isFalse();
+        assertThat(blacklistTokenService.isTokenBlacklisted("d.e.f")).isFalse();
+
+        assertThat(meterRegistry.get("jwt.blacklist.bloom.false.positives").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("jwt.blacklist.bloom.false.positive.rate").gauge().value()).isEqualTo(0.5);
+        logger.info("Tested Bloom filter false positive metrics were successful.");
+    }
+
+    @Test
+    void isTokenBlacklisted_WithBloomFilter_ShouldAskRedisAfterDisconnect() {
+        bloomFilter = enabledBloomFilter(new SimpleMeterRegistry());
+        blacklistTokenService = newService("fail-open");
+        subscribe(bloomFilter);
+        when(redisCommands.exists(anyString())).thenReturn(0L);
+
+        // Revocations published while unsubscribed would be missed, so the filter stays out until rebuilt.
+        bloomFilter.onRedisDisconnected(mock(RedisChannelHandler.class));
+
+        assertThat(bloomFilter.isReady()).isFalse();
+        assertThat(blacklistTokenService.isTokenBlacklisted("a.b.c")).isFalse();
+        verify(redisCommands, times(1)).exists(anyString());
+        logger.info("Tested Bloom filter gating after a disconnect was successful.");
+    }
+}
@@ -0,0 +1,128 @@
+package com.norumai.honkaiwebsitebackend.service;
+
+import com.norumai.honkaiwebsitebackend.model.User;
+import com.norumai.honkaiwebsitebackend.model.UserPrincipal;
+import com.norumai.honkaiwebsitebackend.repository.UserRepository;
+import com.norumai.honkaiwebsitebackend.util.ReplicaReads;
+import com.norumai.honkaiwebsitebackend.util.UserDetailsCache;
+import io.lettuce.core.RedisConnectionException;
+import io.lettuce.core.cluster.api.sync.RedisClusterCommands;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class CustomUserDetailsServiceTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private UserDetailsCache userDetailsCache;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private CustomUserDetailsService customUserDetailsService;
+
+    private DaoAuthenticationProvider authenticationProvider;
+    private User user;
+
+    private final static Logger logger = LoggerFactory.getLogger(CustomUserDetailsServiceTest.class);
+
+    @BeforeEach
+    void setUp() {
+        // No replicas, every lookup is a single read-only query.
+        customUserDetailsService = new CustomUserDetailsService(userRepository, userDetailsCache,
+                new ReplicaReads(transactionManager, "", 5, 1000));
+
+        // Same encoder layout as SecurityConfig, at the cheapest strength.
+        BCryptPasswordEncoder bCryptPasswordEncoder = new BCryptPasswordEncoder(4);
+        DelegatingPasswordEncoder passwordEncoder =
+                new DelegatingPasswordEncoder("bcrypt", Map.of("bcrypt", bCryptPasswordEncoder));
+        passwordEncoder.setDefaultPasswordEncoderForMatches(bCryptPasswordEncoder);
+
+        authenticationProvider = new DaoAuthenticationProvider(passwordEncoder);
+        authenticationProvider.setUserDetailsService(customUserDetailsService);
+        authenticationProvider.setUserDetailsPasswordService(customUserDetailsService);
+
+        user = new User();
+        user.setId(1L);
+        user.setUsername("testuser");
+        user.setEmail("test@example.com");
+    }
+
+    @Test
+    void login_ShouldRehashLegacyPassword() {
+        // Stored before the delegating encoder, so it has no {bcrypt} prefix.
+        user.setPassword(new BCryptPasswordEncoder(4).encode("password123"));
+        when(userRepository.findByEmailOrUsername("test@example.com")).thenReturn(Optional.of(user));
+
+        Authentication authentication = authenticationProvider.authenticate(
+                new UsernamePasswordAuthenticationToken("test@example.com", "password123"));
+
+        verify(userRepository).updatePassword(eq(1L), anyString());
+        UserPrincipal userPrincipal = (UserPrincipal) authentication.getPrincipal();
+        assertThat(userPrincipal.getUser().getPassword()).startsWith("{bcrypt}");
+        logger.info("Tested rehash of a legacy password on login was successful.");
+    }
+
+    @Test
+    void login_ShouldNotRehashCurrentPassword() {
+        user.setPassword("{bcrypt}" + new BCryptPasswordEncoder(4).encode("password123"));
+        when(userRepository.findByEmailOrUsername("testuser")).thenReturn(Optional.of(user));
+
+        Authentication authentication = authenticationProvider.authenticate(
+                new UsernamePasswordAuthenticationToken("testuser", "password123"));
+
+        verify(userRepository, never()).updatePassword(eq(1L), anyString());
+        assertThat(((UserDetails) authentication.getPrincipal()).getUsername()).isEqualTo("test@example.com");
+        logger.info("Tested login without rehash was successful.");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void loadUserByEmail_WhenRedisIsDown_ShouldLoadFromDatabase() {
+        RedisClusterCommands<String, Object> redisCommands = mock(RedisClusterCommands.class);
+        RedisConnectionException redisDown = new RedisConnectionException("Connection refused");
+        when(redisCommands.get(anyString())).thenThrow(redisDown);
+        when(redisCommands.setex(anyString(), anyLong(), any())).thenThrow(redisDown);
+        UserDetailsCache failingCache = new UserDetailsCache(redisCommands, mock(StatefulRedisPubSubConnection.class),
+                new SimpleMeterRegistry(), true, 1000, 60, 600);
+        CustomUserDetailsService service = new CustomUserDetailsService(userRepository, failingCache,
+                new ReplicaReads(transactionManager, "", 5, 1000));
+        when(userRepository.findByEmail("test@example.com")).thenReturn(Optional.of(user));
+
+        UserDetails userDetails = service.loadUserByEmail("test@example.com");
+
+        assertThat(userDetails.getUsername()).isEqualTo("test@example.com");
+        assertThat(userDetails.getAuthorities()).extracting("authority").containsExactly("ROLE_USER");
+        logger.info("Tested loading user details from the database while Redis is down was successful.");
+    }
+}
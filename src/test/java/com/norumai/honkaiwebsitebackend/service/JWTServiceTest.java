@@ -0,0 +1,138 @@
+package com.norumai.honkaiwebsitebackend.service;
+
+import com.norumai.honkaiwebsitebackend.model.Role;
+import com.norumai.honkaiwebsitebackend.model.User;
+import com.norumai.honkaiwebsitebackend.util.FileJwtKeyManager;
+import com.norumai.honkaiwebsitebackend.util.VerifiedTokenCache;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith(MockitoExtension.class)
+public class JWTServiceTest {
+
+    @Mock
+    private StatefulRedisPubSubConnection<String, Object> pubSubConnection;
+
+    @TempDir
+    private Path keyDirectory;
+
+    private FileJwtKeyManager keyManager;
+    private VerifiedTokenCache verifiedTokenCache;
+    private User user;
+
+    private final static Logger logger = LoggerFactory.getLogger(JWTServiceTest.class);
+
+    @BeforeEach
+    void setUp() {
+        keyManager = new FileJwtKeyManager(keyDirectory.toString(), "EdDSA", 30, 300, 60, 900);
+        verifiedTokenCache = new VerifiedTokenCache(pubSubConnection, new SimpleMeterRegistry(), true, 1000);
+
+        user = new User();
+        user.setId(1L);
+        user.setUsername("testuser");
+        user.setEmail("test@example.com");
+        user.setRole(Role.ADMIN);
+    }
+
+    @Test
+    void verifyToken_ShouldReturnSignedIdentityClaims() {
+        JWTService jwtService = new JWTService(keyManager, verifiedTokenCache, true, 1, 900);
+        String token = jwtService.generateToken(user);
+
+        JWTService.VerifiedToken verifiedToken = jwtService.verifyToken(token);
+        UserDetails userDetails = jwtService.extractUserDetails(verifiedToken);
+
+        assertThat(verifiedToken.email()).isEqualTo("test@example.com");
+        assertThat(userDetails).isNotNull();
+        assertThat(userDetails.getUsername()).isEqualTo("test@example.com");
+        assertThat(userDetails.getAuthorities()).extracting(GrantedAuthority::getAuthority).containsExactly("ROLE_ADMIN");
+        assertThat(jwtService.validateToken(verifiedToken, userDetails)).isTrue();
+        logger.info("Tested signed claims round trip was successful.");
+    }
+
+    @Test
+    void extractUserDetails_ShouldRejectOlderRoleVersion() {
+        JWTService issuingService = new JWTService(keyManager, verifiedTokenCache, true, 1, 900);
+        String token = issuingService.generateToken(user);
+
+        // Verify through the issuer and check with a bumped version.
+        JWTService.VerifiedToken verifiedToken = issuingService.verifyToken(token);
+        JWTService bumpedService = new JWTService(keyManager, verifiedTokenCache, true, 2, 900);
+
+        assertThat(bumpedService.extractUserDetails(verifiedToken)).isNull();
+        logger.info("Tested role version revocation was successful.");
+    }
+
+    @Test
+    void extractUserDetails_ShouldBeNullWhenDisabled() {
+        JWTService jwtService = new JWTService(keyManager, verifiedTokenCache, false, 1, 900);
+        String token = jwtService.generateToken(user);
+
+        assertThat(jwtService.extractUserDetails(jwtService.verifyToken(token))).isNull();
+        logger.info("Tested disabled signed claims was successful.");
+    }
+
+    @Test
+    void validateToken_ShouldFailForDifferentUser() {
+        JWTService jwtService = new JWTService(keyManager, verifiedTokenCache, true, 1, 900);
+        String token = jwtService.generateToken(user);
+        UserDetails otherUser = new org.springframework.security.core.userdetails.User(
+                "other@example.com", "", Collections.emptyList());
+
+        assertThat(jwtService.validateToken(jwtService.verifyToken(token), otherUser)).isFalse();
+        logger.info("Tested token validation for a different user was successful.");
+    }
+
+    @Test
+    void verifyToken_ShouldAcceptTokensFromAnotherNode() {
+        JWTService issuingNode = new JWTService(keyManager, verifiedTokenCache, true, 1, 900);
+        String token = issuingNode.generateToken(user);
+
+        // Another node, or this one after a restart, reading the same key directory.
+        FileJwtKeyManager otherKeyManager = new FileJwtKeyManager(keyDirectory.toString(), "EdDSA", 30, 300, 60, 900);
+        JWTService otherNode = new JWTService(otherKeyManager,
+                new VerifiedTokenCache(pubSubConnection, new SimpleMeterRegistry(), false, 0), true, 1, 900);
+
+        assertThat(otherNode.verifyToken(token).email()).isEqualTo("test@example.com");
+        assertThat(otherKeyManager.signingKey().kid()).isEqualTo(keyManager.signingKey().kid());
+        logger.info("Tested verification across nodes was successful.");
+    }
+
+    @Test
+    void verifyToken_ShouldAcceptTokensOfRotatedKeys() {
+        JWTService jwtService = new JWTService(keyManager, verifiedTokenCache, true, 1, 900);
+        String oldToken = jwtService.generateToken(user);
+        String oldKid = keyManager.signingKey().kid();
+
+        // Rotation due right away and no activation delay, switching to ES256 at the same time.
+        FileJwtKeyManager rotatingKeyManager = new FileJwtKeyManager(keyDirectory.toString(), "ES256", 0, 0, 0, 900);
+        rotatingKeyManager.signingKey();
+        JWTService rotatedService = new JWTService(rotatingKeyManager,
+                new VerifiedTokenCache(pubSubConnection, new SimpleMeterRegistry(), false, 0), true, 1, 900);
+        String newToken = rotatedService.generateToken(user);
+
+        // Every reload rotates again with these settings, older keys stay published until their tokens expire.
+        String header = new String(Base64.getUrlDecoder().decode(newToken.substring(0, newToken.indexOf('.'))));
+        assertThat(header).contains("\"alg\":\"ES256\"").doesNotContain(oldKid);
+        assertThat(rotatedService.verifyToken(oldToken).email()).isEqualTo("test@example.com");
+        assertThat(rotatedService.verifyToken(newToken).email()).isEqualTo("test@example.com");
+        assertThat(rotatingKeyManager.publishedKeys()).extracting(key -> key.kid()).contains(oldKid);
+        logger.info("Tested key rotation was successful.");
+    }
+}
@@ -0,0 +1,102 @@
+package com.norumai.honkaiwebsitebackend.service;
+
+import io.lettuce.core.RedisCommandTimeoutException;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class RateLimitServiceTest {
+
+    @Mock
+    private RedisAsyncCommands<String, String> redisAsyncCommands;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final static Logger logger = LoggerFactory.getLogger(RateLimitServiceTest.class);
+
+    private RateLimitService rateLimitService(int burst) {
+        return new RateLimitService(redisAsyncCommands, meterRegistry, true, 60, 50, 1000, burst, 60, burst, 10);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void redisAnswers(List<Object> result) throws Exception {
+        RedisFuture<List<Object>> future = mock(RedisFuture.class);
+        when(future.get(anyLong(), any(TimeUnit.class))).thenReturn(result);
+        when(redisAsyncCommands.<List<Object>>evalsha(any(), eq(ScriptOutputType.MULTI), any(String[].class), anyString(), anyString()))
+                .thenReturn(future);
+    }
+
+    @Test
+    void tryAcquire_ShouldRejectFromMemoryOnceBurstIsUsed() throws Exception {
+        redisAnswers(List.of(1L, 0L));
+        RateLimitService rateLimitService = rateLimitService(2);
+
+        assertThat(rateLimitService.tryAcquire(RateLimitService.Scope.IP, "10.0.0.1").allowed()).isTrue();
+        assertThat(rateLimitService.tryAcquire(RateLimitService.Scope.IP, "10.0.0.1").allowed()).isTrue();
+        RateLimitService.Decision decision = rateLimitService.tryAcquire(RateLimitService.Scope.IP, "10.0.0.1");
+
+        assertThat(decision.allowed()).isFalse();
+        assertThat(decision.retryAfterSeconds()).isPositive();
+        // Other addresses have buckets of their own.
+        assertThat(rateLimitService.tryAcquire(RateLimitService.Scope.IP, "10.0.0.2").allowed()).isTrue();
+        verify(redisAsyncCommands, times(3))
+                .evalsha(any(), eq(ScriptOutputType.MULTI), any(String[].class), anyString(), anyString());
+        assertThat(meterRegistry.get("rate.limit.rejected").tag("scope", "ip").tag("source", "local").counter().count())
+                .isEqualTo(1);
+        logger.info("Tested local token bucket was successful.");
+    }
+
+    @Test
+    void tryAcquire_ShouldRememberGlobalRejections() throws Exception {
+        redisAnswers(List.of(0L, 30000L));
+        RateLimitService rateLimitService = rateLimitService(5);
+
+        RateLimitService.Decision first = rateLimitService.tryAcquire(RateLimitService.Scope.USERNAME, "Test@Example.com");
+        RateLimitService.Decision second = rateLimitService.tryAcquire(RateLimitService.Scope.USERNAME, "test@example.com ");
+
+        assertThat(first.allowed()).isFalse();
+        assertThat(first.retryAfterSeconds()).isEqualTo(30);
+        // Same account after normalization, answered without asking Redis again.
+        assertThat(second.allowed()).isFalse();
+        verify(redisAsyncCommands, times(1))
+                .evalsha(any(), eq(ScriptOutputType.MULTI), any(String[].class), anyString(), anyString());
+        logger.info("Tested global rate limit rejection was successful.");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void tryAcquire_ShouldFailOpenWhenRedisIsDown() throws Exception {
+        RedisFuture<List<Object>> future = mock(RedisFuture.class);
+        when(future.get(anyLong(), any(TimeUnit.class)))
+                .thenThrow(new ExecutionException(new RedisCommandTimeoutException("timed out")));
+        when(redisAsyncCommands.<List<Object>>evalsha(any(), eq(ScriptOutputType.MULTI), any(String[].class), anyString(), anyString()))
+                .thenReturn(future);
+        RateLimitService rateLimitService = rateLimitService(5);
+
+        assertThat(rateLimitService.tryAcquire(RateLimitService.Scope.IP, "10.0.0.1").allowed()).isTrue();
+        assertThat(meterRegistry.get("rate.limit.redis.errors").counter().count()).isEqualTo(1);
+        logger.info("Tested rate limit fail open was successful.");
+    }
+}
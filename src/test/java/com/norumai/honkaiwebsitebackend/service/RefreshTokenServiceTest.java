@@ -0,0 +1,109 @@
+package com.norumai.honkaiwebsitebackend.service;
+
+import com.norumai.honkaiwebsitebackend.model.Role;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import io.lettuce.core.api.sync.RedisCommands;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class RefreshTokenServiceTest {
+
+    @Mock
+    private RedisCommands<String, String> redisCommands;
+
+    @Mock
+    private RedisAsyncCommands<String, String> redisAsyncCommands;
+
+    @Mock
+    private BlacklistTokenService blacklistTokenService;
+
+    private RefreshTokenService refreshTokenService;
+
+    private final static Logger logger = LoggerFactory.getLogger(RefreshTokenServiceTest.class);
+
+    @BeforeEach
+    void setUp() {
+        when(redisCommands.digest(any(String.class))).thenReturn("sha");
+        // Compared by the real watermark check, only the stored watermark is stubbed.
+        lenient().when(blacklistTokenService.isRevokedByWatermark(anyLong(), anyLong())).thenCallRealMethod();
+        refreshTokenService = new RefreshTokenService(redisCommands, redisAsyncCommands, blacklistTokenService,
+                new SimpleMeterRegistry(), 1209600, 10);
+    }
+
+    @Test
+    void rotate_ShouldMintIdentityFromFamilyWithoutDatabase() {
+        String created = String.valueOf(System.currentTimeMillis());
+        when(redisCommands.evalsha(eq("sha"), eq(ScriptOutputType.MULTI), any(String[].class), any(String[].class)))
+                .thenReturn(List.of(1L, "42", "test@example.com", "testuser", "ADMIN", created));
+        when(blacklistTokenService.revokedBefore(42L)).thenReturn(0L);
+
+        RefreshTokenService.Rotation rotation = refreshTokenService.rotate("family.secret");
+
+        assertThat(rotation.status()).isEqualTo(RefreshTokenService.Status.ROTATED);
+        assertThat(rotation.refreshToken()).startsWith("family.").isNotEqualTo("family.secret");
+        assertThat(rotation.user().getId()).isEqualTo(42L);
+        assertThat(rotation.user().getEmail()).isEqualTo("test@example.com");
+        assertThat(rotation.user().getRole()).isEqualTo(Role.ADMIN);
+        logger.info("Tested refresh token rotation was successful.");
+    }
+
+    @Test
+    void rotate_ShouldRejectReusedAndRevokedFamilies() {
+        when(redisCommands.evalsha(eq("sha"), eq(ScriptOutputType.MULTI), any(String[].class), any(String[].class)))
+                .thenReturn(List.of(-1L));
+        assertThat(refreshTokenService.rotate("family.secret").status()).isEqualTo(RefreshTokenService.Status.REUSED);
+
+        // Family started before the user's last "log out all sessions".
+        String created = String.valueOf(System.currentTimeMillis() - 60_000);
+        when(redisCommands.evalsha(eq("sha"), eq(ScriptOutputType.MULTI), any(String[].class), any(String[].class)))
+                .thenReturn(List.of(1L, "42", "test@example.com", "testuser", "USER", created));
+        when(blacklistTokenService.revokedBefore(42L)).thenReturn(System.currentTimeMillis() / 1000);
+        assertThat(refreshTokenService.rotate("family.secret").status()).isEqualTo(RefreshTokenService.Status.REVOKED);
+        verify(redisCommands).del(RefreshTokenService.KEY_PREFIX + "family");
+
+        assertThat(refreshTokenService.rotate("malformed").status()).isEqualTo(RefreshTokenService.Status.EXPIRED);
+        verify(redisCommands, never()).eval(any(String.class), any(), any(String[].class), any(String[].class));
+        logger.info("Tested refresh token reuse and revocation was successful.");
+    }
+
+    @Test
+    void rotate_ShouldRejectFamiliesStartedWithinTheWatermarkSecond() {
+        long watermark = System.currentTimeMillis() / 1000 - 60;
+        when(blacklistTokenService.revokedBefore(42L)).thenReturn(watermark);
+        when(blacklistTokenService.isRevokedByWatermark(eq(42L), any(Date.class))).thenCallRealMethod();
+
+        // Same boundary as access tokens, started in the revoking second (even its last millisecond) is revoked.
+        String sameSecond = String.valueOf(watermark * 1000 + 999);
+        when(redisCommands.evalsha(eq("sha"), eq(ScriptOutputType.MULTI), any(String[].class), any(String[].class)))
+                .thenReturn(List.of(1L, "42", "test@example.com", "testuser", "USER", sameSecond));
+        assertThat(refreshTokenService.rotate("family.secret").status()).isEqualTo(RefreshTokenService.Status.REVOKED);
+        assertThat(blacklistTokenService.isRevokedByWatermark(42L, new Date(watermark * 1000 + 999))).isTrue();
+
+        String nextSecond = String.valueOf((watermark + 1) * 1000);
+        when(redisCommands.evalsha(eq("sha"), eq(ScriptOutputType.MULTI), any(String[].class), any(String[].class)))
+                .thenReturn(List.of(1L, "42", "test@example.com", "testuser", "USER", nextSecond));
+        assertThat(refreshTokenService.rotate("family.secret").status()).isEqualTo(RefreshTokenService.Status.ROTATED);
+        assertThat(blacklistTokenService.isRevokedByWatermark(42L, new Date((watermark + 1) * 1000))).isFalse();
+        logger.info("Tested refresh token watermark boundary was successful.");
+    }
+}
@@ -0,0 +1,82 @@
+package com.norumai.honkaiwebsitebackend.service;
+
+import io.lettuce.core.Range;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class SessionServiceTest {
+
+    @Mock
+    private RedisAsyncCommands<String, Object> redisAsyncCommands;
+
+    @Mock
+    private BlacklistTokenService blacklistTokenService;
+
+    private SessionService sessionService;
+
+    private final static Logger logger = LoggerFactory.getLogger(SessionServiceTest.class);
+
+    @BeforeEach
+    void setUp() {
+        sessionService = new SessionService(redisAsyncCommands, blacklistTokenService, 900);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> RedisFuture<T> completed(T value) {
+        RedisFuture<T> future = mock(RedisFuture.class);
+        when(future.toCompletableFuture()).thenReturn(CompletableFuture.completedFuture(value));
+        return future;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void revokeAllSessions_ShouldReadEverySetBeforeWriting() {
+        RedisFuture<List<Object>> firstUser = completed(List.of("hash1", "hash2"));
+        RedisFuture<List<Object>> secondUser = completed(Collections.emptyList());
+        when(redisAsyncCommands.zrangebyscore(eq(SessionService.KEY_PREFIX + 1), any(Range.class))).thenReturn(firstUser);
+        when(redisAsyncCommands.zrangebyscore(eq(SessionService.KEY_PREFIX + 2), any(Range.class))).thenReturn(secondUser);
+        RedisFuture<Long> zremFuture = completed(2L);
+        when(redisAsyncCommands.zrem(eq(SessionService.KEY_PREFIX + 1), any(Object[].class))).thenReturn(zremFuture);
+        when(blacklistTokenService.revokeIssuedBeforeAsync(anyLong(), anyLong()))
+                .thenReturn(CompletableFuture.completedFuture(null));
+        when(blacklistTokenService.blacklistHashedTokensAsync(anyCollection(), anyString()))
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        int revoked = sessionService.revokeAllSessions(List.of(1L, 2L));
+
+        assertThat(revoked).isEqualTo(2);
+        // Both reads are issued before any result is awaited, so they share one round trip.
+        var order = inOrder(redisAsyncCommands, blacklistTokenService);
+        order.verify(redisAsyncCommands).zrangebyscore(eq(SessionService.KEY_PREFIX + 1), any(Range.class));
+        order.verify(redisAsyncCommands).zrangebyscore(eq(SessionService.KEY_PREFIX + 2), any(Range.class));
+        order.verify(blacklistTokenService).revokeIssuedBeforeAsync(eq(1L), anyLong());
+        verify(blacklistTokenService).blacklistHashedTokensAsync(List.of("hash1", "hash2"), "user:1");
+        verify(blacklistTokenService).revokeIssuedBeforeAsync(eq(2L), anyLong());
+        verify(redisAsyncCommands, never()).zrem(eq(SessionService.KEY_PREFIX + 2), any(Object[].class));
+        logger.info("Tested bulk session revocation was successful.");
+    }
+}
@@ -1,23 +1,34 @@
 package com.norumai.honkaiwebsitebackend.service;
 
 import com.norumai.honkaiwebsitebackend.dto.RegisterRequest;
+import com.norumai.honkaiwebsitebackend.dto.UserPage;
+import com.norumai.honkaiwebsitebackend.dto.UserSummary;
+import com.norumai.honkaiwebsitebackend.model.Role;
 import com.norumai.honkaiwebsitebackend.model.User;
 import com.norumai.honkaiwebsitebackend.repository.UserRepository;
+import com.norumai.honkaiwebsitebackend.util.ReplicaReads;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Limit;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
 
+import java.util.List;
 import java.util.Optional;
 
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
 
 @ExtendWith(MockitoExtension.class)
 public class UserServiceTest {
@@ -28,11 +39,20 @@ public class UserServiceTest {
     @Mock
     private PasswordEncoder passwordEncoder;
 
-    @InjectMocks
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
     private UserService userService;
 
     private final static Logger logger = LoggerFactory.getLogger(UserServiceTest.class);
 
+    @BeforeEach
+    void setUp() {
+        // One replica configured, the mocked transaction manager only records which side each read asked for.
+        ReplicaReads replicaReads = new ReplicaReads(transactionManager, "jdbc:mysql://replica:3306/honkai", 5, 1000);
+        userService = new UserService(userRepository, passwordEncoder, transactionManager, replicaReads);
+    }
+
     @Test
     void testCreateUser_ShouldEncodePasswordAndSaveUser () {
         RegisterRequest request = new RegisterRequest();
@@ -85,4 +105,69 @@ public class UserServiceTest {
         assertThat(result.get().getUsername()).isEqualTo("testuser");
         logger.info("Tested findByUsername method was successful.");
     }
+
+    private static UserSummary summary(long id) {
+        return new UserSummary(id, "user" + id, "user" + id + "@example.com", Role.USER, null, null);
+    }
+
+    @Test
+    void getUsers_ShouldReturnCursorOnlyWhenMoreUsersFollow() {
+        when(userRepository.findSummariesAfter(10L, Limit.of(3))).thenReturn(List.of(summary(11), summary(12), summary(15)));
+        when(userRepository.findSummariesAfter(12L, Limit.of(3))).thenReturn(List.of(summary(15)));
+
+        UserPage firstPage = userService.getUsers(10L, 2);
+        UserPage lastPage = userService.getUsers(firstPage.nextCursor(), 2);
+
+        assertThat(firstPage.users()).extracting(UserSummary::id).containsExactly(11L, 12L);
+        assertThat(firstPage.nextCursor()).isEqualTo(12L);
+        assertThat(lastPage.users()).extracting(UserSummary::id).containsExactly(15L);
+        assertThat(lastPage.nextCursor()).isNull();
+        logger.info("Tested keyset pagination was successful.");
+    }
+
+    @Test
+    void findByEmail_MissingOnReplica_ShouldNotAskPrimary() {
+        // Unknown users, e.g. failed logins, must not reach the primary as well.
+        when(userRepository.findByEmail("unknown@example.com")).thenReturn(Optional.empty());
+
+        Optional<User> result = userService.findByEmail("unknown@example.com");
+
+        assertThat(result).isEmpty();
+        verify(transactionManager).getTransaction(argThat(TransactionDefinition::isReadOnly));
+        verify(transactionManager, never()).getTransaction(argThat(definition -> !definition.isReadOnly()));
+        logger.info("Tested replica miss without primary fallback was successful.");
+    }
+
+    @Test
+    void findByEmail_WhenReplicaFails_ShouldAskPrimary() {
+        User user = new User();
+        user.setEmail("test@example.com");
+        when(transactionManager.getTransaction(argThat(TransactionDefinition::isReadOnly)))
+                .thenThrow(new CannotCreateTransactionException("Could not open JDBC Connection"));
+        when(userRepository.findByEmail("test@example.com")).thenReturn(Optional.of(user));
+
+        Optional<User> result = userService.findByEmail("test@example.com");
+
+        assertThat(result).contains(user);
+        verify(transactionManager).getTransaction(argThat(definition -> !definition.isReadOnly()));
+        logger.info("Tested primary fallback after a replica failure was successful.");
+    }
+
+    @Test
+    void findByEmail_AfterCreateUser_ShouldReadFromPrimary() {
+        RegisterRequest request = new RegisterRequest();
+        request.setUsername("newuser");
+        request.setEmail("New@Example.com");
+        request.setPassword("password123");
+        when(passwordEncoder.encode("password123")).thenReturn("hashedPassword");
+        when(userRepository.save(any(User.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        User created = userService.createUser(request);
+        when(userRepository.findByEmail("new@example.com")).thenReturn(Optional.of(created));
+
+        Optional<User> result = userService.findByEmail("new@example.com");
+
+        assertThat(result).contains(created);
+        verify(transactionManager, never()).getTransaction(argThat(TransactionDefinition::isReadOnly));
+        logger.info("Tested read-your-writes after createUser was successful.");
+    }
 }
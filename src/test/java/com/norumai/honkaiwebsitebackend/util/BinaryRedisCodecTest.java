@@ -0,0 +1,121 @@
+package com.norumai.honkaiwebsitebackend.util;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class BinaryRedisCodecTest {
+
+    private final BinaryRedisCodec codec = new BinaryRedisCodec();
+
+    private final static Logger logger = LoggerFactory.getLogger(BinaryRedisCodecTest.class);
+
+    // What Lettuce writes to the socket.
+    private byte[] encodeToByteBuf(Object value) {
+        ByteBuf target = Unpooled.buffer(codec.estimateSize(value));
+        codec.encodeValue(value, target);
+        byte[] bytes = new byte[target.readableBytes()];
+        target.readBytes(bytes);
+        return bytes;
+    }
+
+    // Lettuce hands replies over in either kind of buffer.
+    private static ByteBuffer direct(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes).flip();
+        return buffer;
+    }
+
+    private void assertRoundTrip(Object value, byte expectedType) {
+        byte[] encoded = encodeToByteBuf(value);
+        assertThat(encoded[0]).isEqualTo(BinaryRedisCodec.VERSION_1);
+        assertThat(encoded[1]).isEqualTo(expectedType);
+
+        ByteBuffer viaByteBuffer = codec.encodeValue(value);
+        byte[] encodedViaByteBuffer = new byte[viaByteBuffer.remaining()];
+        viaByteBuffer.get(encodedViaByteBuffer);
+        assertThat(encodedViaByteBuffer).isEqualTo(encoded);
+
+        assertThat(codec.decodeValue(ByteBuffer.wrap(encoded))).isEqualTo(value);
+        assertThat(codec.decodeValue(direct(encoded))).isEqualTo(value);
+        // Decoded in place from a slice of a larger reply buffer.
+        byte[] padded = new byte[encoded.length + 6];
+        System.arraycopy(encoded, 0, padded, 3, encoded.length);
+        assertThat(codec.decodeValue(ByteBuffer.wrap(padded, 3, encoded.length).slice())).isEqualTo(value);
+    }
+
+    @Test
+    void encodeValue_ShouldRoundTripEveryType() {
+        assertRoundTrip(null, BinaryRedisCodec.TYPE_NULL);
+        assertRoundTrip("test@example.com", BinaryRedisCodec.TYPE_STRING);
+        assertRoundTrip("", BinaryRedisCodec.TYPE_STRING);
+        assertRoundTrip("ホンカイ ✓ 🚀", BinaryRedisCodec.TYPE_STRING);
+        assertRoundTrip(Long.MIN_VALUE, BinaryRedisCodec.TYPE_LONG);
+        assertRoundTrip(1_700_000_000L, BinaryRedisCodec.TYPE_LONG);
+        assertRoundTrip(Integer.MAX_VALUE, BinaryRedisCodec.TYPE_INTEGER);
+        assertRoundTrip(-1, BinaryRedisCodec.TYPE_INTEGER);
+        assertRoundTrip(true, BinaryRedisCodec.TYPE_BOOLEAN);
+        assertRoundTrip(false, BinaryRedisCodec.TYPE_BOOLEAN);
+        assertRoundTrip(0.1, BinaryRedisCodec.TYPE_DOUBLE);
+        assertRoundTrip(Double.NaN, BinaryRedisCodec.TYPE_DOUBLE);
+        assertRoundTrip(Map.of("role", "ADMIN", "version", 2), BinaryRedisCodec.TYPE_JSON);
+        assertRoundTrip(List.of("a", 1, false), BinaryRedisCodec.TYPE_JSON);
+        logger.info("Tested binary codec round trip of every type was successful.");
+    }
+
+    @Test
+    void encodeKey_ShouldWriteRawUtf8() {
+        String key = "jwt-blacklist:ホンカイ";
+        ByteBuf target = Unpooled.buffer();
+        codec.encodeKey(key, target);
+        byte[] encoded = new byte[target.readableBytes()];
+        target.readBytes(encoded);
+
+        assertThat(encoded).isEqualTo(key.getBytes(StandardCharsets.UTF_8));
+        assertThat(codec.encodeKey(key)).isEqualTo(ByteBuffer.wrap(key.getBytes(StandardCharsets.UTF_8)));
+        assertThat(codec.decodeKey(ByteBuffer.wrap(encoded))).isEqualTo(key);
+        assertThat(codec.decodeKey(direct(encoded))).isEqualTo(key);
+        logger.info("Tested binary codec keys were successful.");
+    }
+
+    @Test
+    void decodeValue_ShouldReadLegacyJsonValues() {
+        // Written before the switch to the binary codec.
+        Jackson2JsonRedisCodec<String, Object> jsonCodec = new Jackson2JsonRedisCodec<>(String.class, Object.class);
+
+        for (Object value : Arrays.asList("test@example.com", 1_700_000_000L, 42, true, 0.5,
+                Map.of("role", "USER"), List.of(1, 2, 3))) {
+            Object expected = jsonCodec.decodeValue(jsonCodec.encodeValue(value));
+            assertThat(codec.decodeValue(jsonCodec.encodeValue(value))).isEqualTo(expected);
+            assertThat(codec.decodeValue(direct(jsonCodec.encodeValue(value).array()))).isEqualTo(expected);
+        }
+        assertThat(codec.decodeValue(ByteBuffer.allocate(0))).isNull();
+        logger.info("Tested binary codec reading legacy JSON values was successful.");
+    }
+
+    @Test
+    void decodeValue_ShouldRejectUnknownVersionsAndTypes() {
+        // Reserved for later versions, e.g. a value written by a newer node during a rolling deploy.
+        byte[] newerVersion = {(byte) 0xB2, BinaryRedisCodec.TYPE_STRING, 'a'};
+        byte[] unknownType = {BinaryRedisCodec.VERSION_1, 42, 'a'};
+
+        assertThatThrownBy(() -> codec.decodeValue(ByteBuffer.wrap(newerVersion)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("version");
+        assertThatThrownBy(() -> codec.decodeValue(ByteBuffer.wrap(unknownType)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("type");
+        logger.info("Tested binary codec rejecting unknown versions and types was successful.");
+    }
+}
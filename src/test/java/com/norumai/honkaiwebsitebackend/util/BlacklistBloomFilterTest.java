@@ -0,0 +1,43 @@
+package com.norumai.honkaiwebsitebackend.util;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BlacklistBloomFilterTest {
+
+    private final static Logger logger = LoggerFactory.getLogger(BlacklistBloomFilterTest.class);
+
+    @Test
+    void rotate_ShouldKeepEntriesForOneMoreWindow() {
+        BlacklistBloomFilter bloomFilter = new BlacklistBloomFilter(null, null, null, new SimpleMeterRegistry(),
+                true, 1000, 0.01, 900);
+        String hashedToken = TokenHasher.hash("a.b.c");
+        bloomFilter.add(hashedToken);
+        assertThat(bloomFilter.mightContain(hashedToken)).isTrue();
+
+        // Revoked near the end of a window, the token is still valid for most of the next one.
+        bloomFilter.rotate();
+        assertThat(bloomFilter.mightContain(hashedToken)).isTrue();
+
+        bloomFilter.rotate();
+        assertThat(bloomFilter.mightContain(hashedToken)).isFalse();
+        logger.info("Tested Bloom filter rotation was successful.");
+    }
+
+    @Test
+    void add_ShouldBeIgnoredWhenDisabled() {
+        BlacklistBloomFilter bloomFilter = new BlacklistBloomFilter(null, null, null, new SimpleMeterRegistry(),
+                false, 1000, 0.01, 900);
+        String hashedToken = TokenHasher.hash("a.b.c");
+
+        bloomFilter.add(hashedToken);
+
+        assertThat(bloomFilter.isReady()).isFalse();
+        assertThat(bloomFilter.mightContain(hashedToken)).isFalse();
+        logger.info("Tested disabled Bloom filter was successful.");
+    }
+}
@@ -0,0 +1,48 @@
+package com.norumai.honkaiwebsitebackend.util;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BloomFilterTest {
+
+    private final static Logger logger = LoggerFactory.getLogger(BloomFilterTest.class);
+
+    @Test
+    void mightContain_ShouldNeverMissAnAddedValue() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put(TokenHasher.hash("revoked-" + i));
+        }
+
+        for (int i = 0; i < 10_000; i++) {
+            assertThat(filter.mightContain(TokenHasher.hash("revoked-" + i))).isTrue();
+        }
+        logger.info("Tested Bloom filter has no false negatives was successful.");
+    }
+
+    @Test
+    void mightContain_ShouldStayNearTargetFalsePositiveRate() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        assertThat(filter.expectedFalsePositiveProbability()).isZero();
+        for (int i = 0; i < 10_000; i++) {
+            filter.put(TokenHasher.hash("revoked-" + i));
+        }
+
+        // Same inputs as production, hex SHA-256 token hashes that were never added.
+        int falsePositives = 0;
+        int lookups = 100_000;
+        for (int i = 0; i < lookups; i++) {
+            if (filter.mightContain(TokenHasher.hash("valid-" + i))) {
+                falsePositives++;
+            }
+        }
+
+        double rate = (double) falsePositives / lookups;
+        assertThat(rate).isBetween(0.005, 0.015);
+        assertThat(filter.expectedFalsePositiveProbability()).isBetween(0.005, 0.015);
+        logger.info("Tested Bloom filter false positive rate ({}) was successful.", rate);
+    }
+}
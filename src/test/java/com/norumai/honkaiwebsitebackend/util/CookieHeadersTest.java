@@ -0,0 +1,75 @@
+package com.norumai.honkaiwebsitebackend.util;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CookieHeadersTest {
+
+    private final static Logger logger = LoggerFactory.getLogger(CookieHeadersTest.class);
+
+    @Test
+    void findValue_ShouldMatchExactName() {
+        assertThat(CookieHeaders.findValue("jwt=a.b.c", "jwt")).isEqualTo("a.b.c");
+        assertThat(CookieHeaders.findValue("theme=dark; jwt=a.b.c; lang=en", "jwt")).isEqualTo("a.b.c");
+        // Names that merely start or end with "jwt" are decoys.
+        assertThat(CookieHeaders.findValue("jwtx=decoy; jwt=a.b.c", "jwt")).isEqualTo("a.b.c");
+        assertThat(CookieHeaders.findValue("xjwt=decoy; jwt=a.b.c", "jwt")).isEqualTo("a.b.c");
+        assertThat(CookieHeaders.findValue("JWT=decoy; jwt=a.b.c", "jwt")).isEqualTo("a.b.c");
+        assertThat(CookieHeaders.findValue("jwtx=decoy", "jwt")).isNull();
+        // First one wins, like getCookies() in order.
+        assertThat(CookieHeaders.findValue("jwt=first; jwt=second", "jwt")).isEqualTo("first");
+        // Base64 padding inside the value is kept.
+        assertThat(CookieHeaders.findValue("jwt=abc==; other=1", "jwt")).isEqualTo("abc==");
+        logger.info("Tested cookie lookup by exact name was successful.");
+    }
+
+    @Test
+    void findValue_ShouldStripQuotesAndWhitespace() {
+        assertThat(CookieHeaders.findValue("jwt=\"a.b.c\"", "jwt")).isEqualTo("a.b.c");
+        assertThat(CookieHeaders.findValue("theme=dark;  jwt = \"a.b.c\" ;lang=en", "jwt")).isEqualTo("a.b.c");
+        assertThat(CookieHeaders.findValue("\tjwt=a.b.c\t", "jwt")).isEqualTo("a.b.c");
+        // A lone quote is part of the value.
+        assertThat(CookieHeaders.findValue("jwt=\"", "jwt")).isEqualTo("\"");
+        assertThat(CookieHeaders.findValue("jwt=", "jwt")).isEmpty();
+        assertThat(CookieHeaders.findValue("jwt=\"\"", "jwt")).isEmpty();
+        logger.info("Tested cookie values with quotes and whitespace was successful.");
+    }
+
+    @Test
+    void findValue_ShouldSkipEmptyAndMalformedSegments() {
+        assertThat(CookieHeaders.findValue(";;; ; jwt=a.b.c;;", "jwt")).isEqualTo("a.b.c");
+        // No '=' at all, the name alone is not a cookie.
+        assertThat(CookieHeaders.findValue("jwt; jwt=a.b.c", "jwt")).isEqualTo("a.b.c");
+        assertThat(CookieHeaders.findValue("jwt", "jwt")).isNull();
+        assertThat(CookieHeaders.findValue("jwt x=1", "jwt")).isNull();
+        assertThat(CookieHeaders.findValue("", "jwt")).isNull();
+        assertThat(CookieHeaders.findValue("   ", "jwt")).isNull();
+        assertThat(CookieHeaders.findValue((String) null, "jwt")).isNull();
+        logger.info("Tested cookie lookup over empty and malformed segments was successful.");
+    }
+
+    @Test
+    void findValue_ShouldSearchEveryCookieHeader() {
+        assertThat(CookieHeaders.findValue(
+                Collections.enumeration(List.of("theme=dark; jwtx=decoy", "jwt=a.b.c")), "jwt")).isEqualTo("a.b.c");
+        assertThat(CookieHeaders.findValue(
+                Collections.enumeration(List.of("jwt=first", "jwt=second")), "jwt")).isEqualTo("first");
+        assertThat(CookieHeaders.findValue(Collections.enumeration(List.of("theme=dark", "")), "jwt")).isNull();
+        assertThat(CookieHeaders.findValue(Collections.emptyEnumeration(), "jwt")).isNull();
+
+        // As JwtFilter reads them, the token in the second of two Cookie headers.
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(HttpHeaders.COOKIE, "theme=dark");
+        request.addHeader(HttpHeaders.COOKIE, "jwt=a.b.c");
+        assertThat(CookieHeaders.findValue(request.getHeaders(HttpHeaders.COOKIE), "jwt")).isEqualTo("a.b.c");
+        logger.info("Tested cookie lookup over several Cookie headers was successful.");
+    }
+}
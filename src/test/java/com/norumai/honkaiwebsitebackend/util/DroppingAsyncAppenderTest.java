@@ -0,0 +1,157 @@
+package com.norumai.honkaiwebsitebackend.util;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.AppenderBase;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+public class DroppingAsyncAppenderTest {
+
+    private static final Level[] DISCARDABLE_LEVELS = {Level.TRACE, Level.DEBUG, Level.INFO};
+
+    private final LoggerContext loggerContext = (LoggerContext) LoggerFactory.getILoggerFactory();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final List<ILoggingEvent> written = new CopyOnWriteArrayList<>();
+    private DroppingAsyncAppender appender;
+    private String name;
+
+    private final static Logger logger = LoggerFactory.getLogger(DroppingAsyncAppenderTest.class);
+
+    // Stands in for the console or file, stuck until released so the queue fills up.
+    private class StuckAppender extends AppenderBase<ILoggingEvent> {
+
+        @Override
+        protected void append(ILoggingEvent event) {
+            written.add(event);
+            try {
+                release.await();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        StuckAppender stuckAppender = new StuckAppender();
+        stuckAppender.setContext(loggerContext);
+        stuckAppender.start();
+
+        // Names are shared by the whole JVM, like the counters behind them.
+        name = "test-" + UUID.randomUUID();
+        appender = new DroppingAsyncAppender();
+        appender.setName(name);
+        appender.setContext(loggerContext);
+        appender.setQueueSize(10);
+        appender.addAppender(stuckAppender);
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        appender.stop();
+    }
+
+    private void log(Level level, String message) {
+        appender.doAppend(new LoggingEvent(DroppingAsyncAppenderTest.class.getName(),
+                loggerContext.getLogger("test"), level, message, null, null));
+    }
+
+    private long dropped() {
+        return DroppingAsyncAppender.droppedEvents().get(name).sum();
+    }
+
+    // First event is taken off the queue and holds the writer, everything after it stays queued.
+    private void blockWriter() {
+        log(Level.WARN, "blocker");
+        await().atMost(Duration.ofSeconds(5)).until(() -> written.size() == 1);
+    }
+
+    @Test
+    void append_PastThreshold_ShouldDropOnlyBelowWarn() {
+        appender.start();
+        blockWriter();
+
+        // Discarding starts with fewer than 2 free slots (a fifth of the queue), so 9 of these are queued.
+        for (int i = 0; i < 21; i++) {
+            log(DISCARDABLE_LEVELS[i % 3], "event " + i);
+        }
+        assertThat(appender.getNumberOfElementsInQueue()).isEqualTo(9);
+        assertThat(dropped()).isEqualTo(12);
+
+        // One free slot left, the second of these has to wait for the writer.
+        CompletableFuture<Void> warnings = CompletableFuture.runAsync(() -> {
+            log(Level.WARN, "warning 1");
+            log(Level.ERROR, "error");
+            log(Level.WARN, "warning 2");
+        });
+        await().during(Duration.ofMillis(300)).atMost(Duration.ofSeconds(2)).until(() -> !warnings.isDone());
+
+        release.countDown();
+        assertThat(warnings).succeedsWithin(Duration.ofSeconds(5));
+        appender.stop();
+
+        assertThat(written).extracting(ILoggingEvent::getMessage)
+                .contains("warning 1", "error", "warning 2")
+                .hasSize(1 + 9 + 3);
+        assertThat(dropped()).isEqualTo(12);
+        logger.info("Tested dropping only events below WARN was successful.");
+    }
+
+    @Test
+    void append_WhenFullWithoutThreshold_ShouldDropBelowWarnWithoutWaiting() {
+        appender.setDiscardingThreshold(0);
+        appender.start();
+        blockWriter();
+
+        for (int i = 0; i < 10; i++) {
+            log(Level.INFO, "event " + i);
+        }
+        assertThat(appender.getRemainingCapacity()).isZero();
+
+        // Would block forever if it waited for room.
+        CompletableFuture<Void> infos = CompletableFuture.runAsync(() -> {
+            log(Level.INFO, "dropped");
+            log(Level.DEBUG, "dropped");
+        });
+        assertThat(infos).succeedsWithin(Duration.ofSeconds(5));
+        assertThat(dropped()).isEqualTo(2);
+        logger.info("Tested dropping events below WARN from a full queue was successful.");
+    }
+
+    @Test
+    void bindTo_ShouldExposeDroppedEventsAndQueueSize() {
+        appender.setDiscardingThreshold(0);
+        appender.start();
+        blockWriter();
+        for (int i = 0; i < 13; i++) {
+            log(Level.DEBUG, "event " + i);
+        }
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        new AsyncLogMetrics().bindTo(meterRegistry);
+
+        assertThat(meterRegistry.get("logging.events.dropped").tag("appender", name).functionCounter().count())
+                .isEqualTo(3);
+        assertThat(meterRegistry.get("logging.queue.size").tag("appender", name).gauge().value()).isEqualTo(10);
+        logger.info("Tested asynchronous log metrics was successful.");
+    }
+}
@@ -0,0 +1,135 @@
+package com.norumai.honkaiwebsitebackend.util;
+
+import com.norumai.honkaiwebsitebackend.model.User;
+import com.norumai.honkaiwebsitebackend.service.JWTService;
+import io.jsonwebtoken.JwtException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Properties;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class FileJwtKeyManagerTest {
+
+    @TempDir
+    private Path keyDirectory;
+
+    private final static Logger logger = LoggerFactory.getLogger(FileJwtKeyManagerTest.class);
+
+    private Path keyFile(String kid) {
+        return keyDirectory.resolve(kid + ".key.properties");
+    }
+
+    // Moves a key back in time, as if it had been created and activated that long ago.
+    private void age(String kid, Duration age) throws Exception {
+        Properties properties = new Properties();
+        try (InputStream input = Files.newInputStream(keyFile(kid))) {
+            properties.load(input);
+        }
+        for (String name : new String[]{"createdAt", "activatesAt"}) {
+            long millis = Long.parseLong(properties.getProperty(name));
+            properties.setProperty(name, String.valueOf(millis - age.toMillis()));
+        }
+        try (OutputStream output = Files.newOutputStream(keyFile(kid))) {
+            properties.store(output, null);
+        }
+    }
+
+    // The key published next to the current signing key.
+    private static JwtKeyManager.ManagedKey pendingKey(FileJwtKeyManager keyManager) {
+        String signingKid = keyManager.signingKey().kid();
+        return keyManager.publishedKeys().stream()
+                .filter(key -> !key.kid().equals(signingKid))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    @Test
+    void signingKey_ShouldBeGeneratedOnceAndSharedThroughTheDirectory() {
+        FileJwtKeyManager keyManager = new FileJwtKeyManager(keyDirectory.toString(), "EdDSA", 30, 300, 60, 900);
+        JwtKeyManager.ManagedKey signingKey = keyManager.signingKey();
+
+        assertThat(signingKey.algorithm()).isEqualTo("EdDSA");
+        assertThat(keyFile(signingKey.kid())).exists();
+        assertThat(keyManager.verificationKey(signingKey.kid())).isEqualTo(signingKey.publicKey());
+
+        // Another node, or this one after a restart.
+        FileJwtKeyManager reloaded = new FileJwtKeyManager(keyDirectory.toString(), "EdDSA", 30, 300, 60, 900);
+        assertThat(reloaded.signingKey().kid()).isEqualTo(signingKey.kid());
+        assertThat(reloaded.signingKey().publicKey()).isEqualTo(signingKey.publicKey());
+        assertThat(reloaded.signingKey().privateKey()).isEqualTo(signingKey.privateKey());
+        assertThat(reloaded.publishedKeys()).hasSize(1);
+        logger.info("Tested JWT key generation and persistence was successful.");
+    }
+
+    @Test
+    void rotation_ShouldPublishNewKeyBeforeItSigns() throws Exception {
+        // Reloaded on every call and due for rotation as soon as it exists.
+        FileJwtKeyManager keyManager = new FileJwtKeyManager(keyDirectory.toString(), "EdDSA", 0, 300, 0, 900);
+        JwtKeyManager.ManagedKey firstKey = keyManager.signingKey();
+
+        JwtKeyManager.ManagedKey pendingKey = pendingKey(keyManager);
+        assertThat(keyManager.publishedKeys()).hasSize(2);
+        assertThat(pendingKey.activatesAt()).isAfter(Instant.now().plus(Duration.ofMinutes(4)));
+        assertThat(keyManager.verificationKey(pendingKey.kid())).isEqualTo(pendingKey.publicKey());
+        // Still signing with the first key during the activation delay.
+        assertThat(keyManager.signingKey().kid()).isEqualTo(firstKey.kid());
+
+        age(firstKey.kid(), Duration.ofMinutes(10));
+        age(pendingKey.kid(), Duration.ofMinutes(6));
+
+        assertThat(keyManager.signingKey().kid()).isEqualTo(pendingKey.kid());
+        assertThat(keyManager.verificationKey(firstKey.kid())).isEqualTo(firstKey.publicKey());
+        logger.info("Tested JWT key activation delay was successful.");
+    }
+
+    @Test
+    void retiredKey_ShouldBeDeletedAndItsTokensRejected() throws Exception {
+        // Access tokens live 60 s, so a key is retired once its successor has signed for 60 s plus the clock skew.
+        FileJwtKeyManager keyManager = new FileJwtKeyManager(keyDirectory.toString(), "EdDSA", 0, 300, 0, 60);
+        JWTService jwtService = new JWTService(keyManager,
+                new VerifiedTokenCache(null, new SimpleMeterRegistry(), false, 0), true, 1, 60);
+        User user = new User();
+        user.setId(1L);
+        user.setUsername("testuser");
+        user.setEmail("test@example.com");
+
+        JwtKeyManager.ManagedKey firstKey = keyManager.signingKey();
+        String token = jwtService.generateToken(user);
+        JwtKeyManager.ManagedKey successor = pendingKey(keyManager);
+
+        // Successor active for 90 s, not yet longer than a token lives plus the skew.
+        age(firstKey.kid(), Duration.ofMinutes(10));
+        age(successor.kid(), Duration.ofSeconds(390));
+        assertThat(keyManager.signingKey().kid()).isEqualTo(successor.kid());
+        assertThat(jwtService.verifyToken(token).email()).isEqualTo("test@example.com");
+
+        age(successor.kid(), Duration.ofMinutes(1));
+
+        assertThat(keyManager.publishedKeys()).extracting(JwtKeyManager.ManagedKey::kid)
+                .contains(successor.kid())
+                .doesNotContain(firstKey.kid());
+        assertThat(keyFile(firstKey.kid())).doesNotExist();
+        assertThat(keyManager.verificationKey(firstKey.kid())).isNull();
+        assertThatThrownBy(() -> jwtService.verifyToken(token)).isInstanceOf(JwtException.class);
+        logger.info("Tested JWT key retirement was successful.");
+    }
+
+    @Test
+    void constructor_ShouldRejectUnsupportedAlgorithm() {
+        assertThatThrownBy(() -> new FileJwtKeyManager(keyDirectory.toString(), "HS256", 30, 300, 60, 900))
+                .isInstanceOf(IllegalArgumentException.class);
+        logger.info("Tested rejecting an unsupported JWT signing algorithm was successful.");
+    }
+}
@@ -0,0 +1,70 @@
+package com.norumai.honkaiwebsitebackend.util;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LogSamplerTest {
+
+    private final static Logger logger = LoggerFactory.getLogger(LogSamplerTest.class);
+
+    @Test
+    void sample_ShouldLetFirstMessagePerIntervalThrough() throws InterruptedException {
+        LogSampler logSampler = new LogSampler(Duration.ofMillis(300));
+
+        // Nothing suppressed before the first message.
+        assertThat(logSampler.sample()).isZero();
+        List<Long> withinInterval = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            withinInterval.add(logSampler.sample());
+        }
+        assertThat(withinInterval).containsOnly(-1L);
+
+        Thread.sleep(400);
+        // The next one reports how many were suppressed in between, and opens a new interval.
+        assertThat(logSampler.sample()).isEqualTo(4);
+        assertThat(logSampler.sample()).isEqualTo(-1);
+        logger.info("Tested log sampling per interval was successful.");
+    }
+
+    @Test
+    void sample_ShouldLetOneOfManyConcurrentCallersThrough() throws InterruptedException {
+        LogSampler logSampler = new LogSampler(Duration.ofHours(1));
+        AtomicInteger allowed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                }
+                catch (InterruptedException e) {
+                    return;
+                }
+                for (int j = 0; j < 1000; j++) {
+                    if (logSampler.sample() >= 0) {
+                        allowed.incrementAndGet();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(allowed).hasValue(1);
+        logger.info("Tested log sampling under concurrent callers was successful.");
+    }
+}
@@ -0,0 +1,89 @@
+package com.norumai.honkaiwebsitebackend.util;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+public class PasswordHashingExecutorTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private PasswordHashingExecutor passwordHashingExecutor;
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private final static Logger logger = LoggerFactory.getLogger(PasswordHashingExecutorTest.class);
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        // One thread and one queue slot, callers give up after 200 ms.
+        passwordHashingExecutor = new PasswordHashingExecutor(meterRegistry, 1, 1, 200, 1, 250);
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        passwordHashingExecutor.shutdown();
+    }
+
+    // Like BCrypt, keeps going when its caller gives up and interrupts it.
+    private boolean hashIgnoringInterrupts() {
+        while (release.getCount() > 0) {
+            try {
+                release.await();
+            }
+            catch (InterruptedException ignored) {
+            }
+        }
+        return true;
+    }
+
+    private double queueDepth() {
+        return meterRegistry.get("password.hashing.queue.depth").gauge().value();
+    }
+
+    @Test
+    void execute_WhenTimedOut_ShouldNotRunQueuedTask() {
+        CompletableFuture<Boolean> abandoned = CompletableFuture.supplyAsync(
+                () -> passwordHashingExecutor.execute("matches", this::hashIgnoringInterrupts));
+        await().atMost(Duration.ofSeconds(5))
+                .until(() -> meterRegistry.get("password.hashing.active").gauge().value() == 1);
+
+        AtomicBoolean queuedTaskRan = new AtomicBoolean();
+        assertThatThrownBy(() -> passwordHashingExecutor.execute("matches", () -> queuedTaskRan.getAndSet(true)))
+                .isInstanceOf(PasswordHashingRejectedException.class);
+        // The slot is free again while the abandoned hash still holds the thread.
+        assertThat(queueDepth()).isZero();
+        assertThat(abandoned).failsWithin(Duration.ofSeconds(5));
+
+        release.countDown();
+        assertThat(passwordHashingExecutor.execute("matches", () -> true)).isTrue();
+        assertThat(queuedTaskRan).isFalse();
+        assertThat(meterRegistry.get("password.hashing.rejected").counter().count()).isEqualTo(2);
+        logger.info("Tested skipping a queued hash after its caller timed out was successful.");
+    }
+
+    @Test
+    void execute_WhenQueueIsFull_ShouldRejectAtOnce() {
+        CompletableFuture.runAsync(() -> passwordHashingExecutor.execute("matches", this::hashIgnoringInterrupts));
+        await().atMost(Duration.ofSeconds(5))
+                .until(() -> meterRegistry.get("password.hashing.active").gauge().value() == 1);
+        CompletableFuture.runAsync(() -> passwordHashingExecutor.execute("matches", () -> true));
+        await().atMost(Duration.ofSeconds(5)).until(() -> queueDepth() == 1);
+
+        assertThatThrownBy(() -> passwordHashingExecutor.execute("matches", () -> true))
+                .isInstanceOf(PasswordHashingRejectedException.class);
+        logger.info("Tested rejecting a hash when the queue is full was successful.");
+    }
+}
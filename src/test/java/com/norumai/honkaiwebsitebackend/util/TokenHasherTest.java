@@ -0,0 +1,71 @@
+package com.norumai.honkaiwebsitebackend.util;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Blacklist keys, session members and verified-cache keys are all built from these hashes,
+// a different output would silently un-revoke every stored token.
+public class TokenHasherTest {
+
+    private final static Logger logger = LoggerFactory.getLogger(TokenHasherTest.class);
+
+    @Test
+    void hash_ShouldMatchKnownDigests() {
+        assertThat(TokenHasher.hash("")).isEqualTo("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855");
+        assertThat(TokenHasher.hash("abc")).isEqualTo("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad");
+        // Leading zero bytes are still written out, every hash has the same width.
+        assertThat(TokenHasher.hash("token-1063"))
+                .isEqualTo("00006ff35821a6f6dfa58cc753dcfa7512d8be2530ccecc982e0f33fe157bbc4")
+                .hasSize(TokenHasher.HASH_LENGTH);
+        // Non-ASCII goes through the UTF-8 encoder, longer input than the pooled buffer grows it.
+        assertThat(TokenHasher.hash("ホンカイ.token"))
+                .isEqualTo("c72acc6cac27ac7b892c9d87605565a2ea3bb4a90e1be6d3ce598bbf4ca5b009");
+        assertThat(TokenHasher.hash("a".repeat(5000)))
+                .isEqualTo("c526c6222044dab5674de9c4ac7f4566ebb5e4d8bf9d8ea34c9cc8a7cc3c869c");
+        logger.info("Tested token hashes against known digests was successful.");
+    }
+
+    @Test
+    void hash_ShouldMatchPlainMessageDigest() throws Exception {
+        MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+        HexFormat hex = HexFormat.of();
+        Random random = new Random(42);
+
+        // Pooled hashers are reused across calls of different lengths, nothing may leak from one call to the next.
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder token = new StringBuilder();
+            int length = random.nextInt(i % 10 == 0 ? 3000 : 400);
+            for (int j = 0; j < length; j++) {
+                token.append((char) (random.nextInt(20) == 0 ? 0x3000 + random.nextInt(200) : 0x21 + random.nextInt(94)));
+            }
+            String expected = hex.formatHex(messageDigest.digest(token.toString().getBytes(StandardCharsets.UTF_8)));
+
+            String hashed = TokenHasher.hash(token.toString());
+
+            assertThat(hashed).isEqualTo(expected).hasSize(TokenHasher.HASH_LENGTH).matches("[0-9a-f]{64}");
+        }
+        logger.info("Tested token hashes against MessageDigest was successful.");
+    }
+
+    @Test
+    void prefixed_ShouldPrependPrefixToHash() {
+        String hashedToken = TokenHasher.hash("token-1063");
+
+        assertThat(TokenHasher.prefixed(TokenHasher.asciiPrefix("jwt-blacklist:"), hashedToken))
+                .isEqualTo("jwt-blacklist:00006ff35821a6f6dfa58cc753dcfa7512d8be2530ccecc982e0f33fe157bbc4");
+        assertThat(TokenHasher.prefixed(TokenHasher.asciiPrefix(""), hashedToken)).isEqualTo(hashedToken);
+        // Longer than the pooled output buffer.
+        String longPrefix = "p".repeat(200);
+        assertThat(TokenHasher.prefixed(TokenHasher.asciiPrefix(longPrefix), hashedToken)).isEqualTo(longPrefix + hashedToken);
+        assertThat(TokenHasher.hash("token-1063")).isEqualTo(hashedToken);
+        logger.info("Tested prefixed token hashes was successful.");
+    }
+}
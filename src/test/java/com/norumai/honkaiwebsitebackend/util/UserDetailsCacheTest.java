@@ -0,0 +1,134 @@
+package com.norumai.honkaiwebsitebackend.util;
+
+import io.lettuce.core.RedisCommandTimeoutException;
+import io.lettuce.core.api.sync.RedisCommands;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
+import io.lettuce.core.pubsub.api.sync.RedisPubSubCommands;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class UserDetailsCacheTest {
+
+    @Mock
+    private RedisCommands<String, Object> redisCommands;
+
+    @Mock
+    private StatefulRedisPubSubConnection<String, Object> pubSubConnection;
+
+    @Mock
+    private RedisPubSubCommands<String, Object> pubSubCommands;
+
+    private SimpleMeterRegistry meterRegistry;
+    private UserDetailsCache userDetailsCache;
+
+    private final static Logger logger = LoggerFactory.getLogger(UserDetailsCacheTest.class);
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        userDetailsCache = new UserDetailsCache(redisCommands, pubSubConnection, meterRegistry, true, 1000, 60, 600);
+    }
+
+    @Test
+    void put_ShouldFillBothTiers() {
+        userDetailsCache.put("test@example.com", "USER");
+
+        assertThat(userDetailsCache.getRole("test@example.com")).isEqualTo("USER");
+        verify(redisCommands).setex(UserDetailsCache.KEY_PREFIX + "test@example.com", 600, "USER");
+        verify(redisCommands, never()).get(anyString());
+        logger.info("Tested user details cache put was successful.");
+    }
+
+    @Test
+    void getRole_ShouldFallBackToRedisAndKeepTheAnswerLocally() {
+        when(redisCommands.get(UserDetailsCache.KEY_PREFIX + "test@example.com")).thenReturn("ADMIN");
+        when(redisCommands.get(UserDetailsCache.KEY_PREFIX + "unknown@example.com")).thenReturn(null);
+
+        // Cached by another node, this node has not seen the user yet.
+        assertThat(userDetailsCache.getRole("test@example.com")).isEqualTo("ADMIN");
+        assertThat(userDetailsCache.getRole("test@example.com")).isEqualTo("ADMIN");
+        assertThat(userDetailsCache.getRole("unknown@example.com")).isNull();
+
+        verify(redisCommands, times(1)).get(UserDetailsCache.KEY_PREFIX + "test@example.com");
+        assertThat(meterRegistry.get("user.details.cache.redis").tag("result", "hit").counter().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("user.details.cache.redis").tag("result", "miss").counter().count()).isEqualTo(1);
+        logger.info("Tested user details Redis tier was successful.");
+    }
+
+    @Test
+    void evict_ShouldDropBothTiersAndNotifyOtherNodes() {
+        userDetailsCache.put("test@example.com", "USER");
+
+        userDetailsCache.evict("test@example.com");
+
+        verify(redisCommands).del(UserDetailsCache.KEY_PREFIX + "test@example.com");
+        verify(redisCommands).publish(UserDetailsCache.CHANNEL, "test@example.com");
+        assertThat(userDetailsCache.getRole("test@example.com")).isNull();
+        logger.info("Tested user details eviction was successful.");
+    }
+
+    @Test
+    void message_ShouldEvictLocalEntryChangedOnAnotherNode() {
+        when(pubSubConnection.sync()).thenReturn(pubSubCommands);
+        userDetailsCache.init();
+        verify(pubSubConnection).addListener(userDetailsCache);
+        verify(pubSubCommands).subscribe(UserDetailsCache.CHANNEL);
+        userDetailsCache.put("test@example.com", "ADMIN");
+        userDetailsCache.put("other@example.com", "USER");
+
+        // Demoted on another node, which already replaced the Redis entry.
+        userDetailsCache.message(UserDetailsCache.CHANNEL, "test@example.com");
+        when(redisCommands.get(UserDetailsCache.KEY_PREFIX + "test@example.com")).thenReturn(null);
+
+        assertThat(userDetailsCache.getRole("test@example.com")).isNull();
+        assertThat(userDetailsCache.getRole("other@example.com")).isEqualTo("USER");
+        logger.info("Tested user details eviction through pub/sub was successful.");
+    }
+
+    @Test
+    void subscribed_ShouldDropLocalEntriesThatMayHaveMissedEvictions() {
+        userDetailsCache.put("test@example.com", "ADMIN");
+        when(redisCommands.get(UserDetailsCache.KEY_PREFIX + "test@example.com")).thenReturn(null);
+
+        // Resubscribed after a disconnect.
+        userDetailsCache.subscribed(UserDetailsCache.CHANNEL, 1);
+
+        assertThat(userDetailsCache.getRole("test@example.com")).isNull();
+        logger.info("Tested user details resync after resubscribing was successful.");
+    }
+
+    @Test
+    void redisFailure_ShouldNotFailCallers() {
+        RedisCommandTimeoutException timeout = new RedisCommandTimeoutException("Command timed out");
+        when(redisCommands.get(anyString())).thenThrow(timeout);
+        doThrow(timeout).when(redisCommands).setex(anyString(), anyLong(), any());
+        doThrow(timeout).when(redisCommands).del(anyString());
+
+        // Read is a miss, so the caller loads from the database and puts the answer.
+        assertThat(userDetailsCache.getRole("test@example.com")).isNull();
+        userDetailsCache.put("test@example.com", "USER");
+        assertThat(userDetailsCache.getRole("test@example.com")).isEqualTo("USER");
+        userDetailsCache.evict("test@example.com");
+        assertThat(userDetailsCache.getRole("test@example.com")).isNull();
+
+        assertThat(meterRegistry.get("user.details.cache.redis").tag("result", "miss").counter().count()).isEqualTo(2);
+        logger.info("Tested user details cache while Redis is failing was successful.");
+    }
+}
@@ -0,0 +1,98 @@
+package com.norumai.honkaiwebsitebackend.util;
+
+import com.norumai.honkaiwebsitebackend.service.JWTService;
+import io.lettuce.core.pubsub.RedisPubSubListener;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
+import io.lettuce.core.pubsub.api.sync.RedisPubSubCommands;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class VerifiedTokenCacheTest {
+
+    @Mock
+    private StatefulRedisPubSubConnection<String, Object> pubSubConnection;
+
+    @Mock
+    private RedisPubSubCommands<String, Object> pubSubCommands;
+
+    private VerifiedTokenCache verifiedTokenCache;
+
+    private final static Logger logger = LoggerFactory.getLogger(VerifiedTokenCacheTest.class);
+
+    @BeforeEach
+    void setUp() {
+        verifiedTokenCache = new VerifiedTokenCache(pubSubConnection, new SimpleMeterRegistry(), true, 1000);
+    }
+
+    private static JWTService.VerifiedToken expiringIn(long millis) {
+        return new JWTService.VerifiedToken("test@example.com", new Date(System.currentTimeMillis() + millis), null);
+    }
+
+    @Test
+    void get_ShouldExpireWithTheToken() {
+        String hashedToken = TokenHasher.hash("a.b.c");
+        verifiedTokenCache.put(hashedToken, expiringIn(1500));
+        assertThat(verifiedTokenCache.get(hashedToken)).isNotNull();
+
+        // Gone once the token's exp has passed, not after some fixed cache TTL.
+        await().atMost(Duration.ofSeconds(5)).until(() -> verifiedTokenCache.get(hashedToken) == null);
+        logger.info("Tested verified token expiry was successful.");
+    }
+
+    @Test
+    void put_ShouldSkipExpiredTokensAndTokensWithoutExpiry() {
+        verifiedTokenCache.put("expired", expiringIn(-1000));
+        verifiedTokenCache.put("no-expiry", new JWTService.VerifiedToken("test@example.com", null, null));
+
+        assertThat(verifiedTokenCache.get("expired")).isNull();
+        assertThat(verifiedTokenCache.get("no-expiry")).isNull();
+        logger.info("Tested verified token cache skipping unusable tokens was successful.");
+    }
+
+    @Test
+    void message_ShouldEvictTokenBlacklistedOnAnotherNode() {
+        when(pubSubConnection.sync()).thenReturn(pubSubCommands);
+        verifiedTokenCache.init();
+        verify(pubSubConnection).addListener((RedisPubSubListener<String, Object>) verifiedTokenCache);
+        verify(pubSubCommands).subscribe(BlacklistNearCache.CHANNEL);
+
+        String hashedToken = TokenHasher.hash("a.b.c");
+        String otherHashedToken = TokenHasher.hash("d.e.f");
+        verifiedTokenCache.put(hashedToken, expiringIn(60_000));
+        verifiedTokenCache.put(otherHashedToken, expiringIn(60_000));
+
+        // Published by the node that handled the logout.
+        verifiedTokenCache.message(BlacklistNearCache.CHANNEL, hashedToken);
+        verifiedTokenCache.message("some-other-channel", otherHashedToken);
+
+        assertThat(verifiedTokenCache.get(hashedToken)).isNull();
+        assertThat(verifiedTokenCache.get(otherHashedToken)).isNotNull();
+        logger.info("Tested verified token eviction through pub/sub was successful.");
+    }
+
+    @Test
+    void get_ShouldMissWhenDisabled() {
+        VerifiedTokenCache disabledCache = new VerifiedTokenCache(pubSubConnection, new SimpleMeterRegistry(), false, 1000);
+        String hashedToken = TokenHasher.hash("a.b.c");
+
+        disabledCache.put(hashedToken, expiringIn(60_000));
+
+        assertThat(disabledCache.get(hashedToken)).isNull();
+        logger.info("Tested disabled verified token cache was successful.");
+    }
+}